@@ -0,0 +1,187 @@
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/*
+AStarSearch: shortest paths over the occupancy grid from a mover to any cell
+next to its target, using the Manhattan distance as the heuristic. The search
+arrays are sized to the world once and reused, with a per-search stamp instead
+of clearing them
+ */
+
+final class AStarSearch
+{
+   private static final int[] DX = { -1, 1, 0, 0 };
+   private static final int[] DY = { 0, 0, -1, 1 };
+
+   private final WorldModel world;
+   private final int numCols;
+   private final int[] cost;
+   private final int[] cameFrom;
+   private final int[] seen;
+   private int stamp;
+
+   /* binary heap of (f << 32 | cell) */
+   private long[] open;
+   private int openSize;
+
+   public AStarSearch(WorldModel world)
+   {
+      this.world = world;
+      this.numCols = world.numCols;
+      int cells = world.numRows * world.numCols;
+      this.cost = new int[cells];
+      this.cameFrom = new int[cells];
+      this.seen = new int[cells];
+      this.stamp = 0;
+      this.open = new long[64];
+      this.openSize = 0;
+   }
+
+   /*
+      Cells to step through, in order, from start to a cell adjacent to goal.
+      Empty when start is already adjacent, null when no path exists.
+   */
+   public synchronized List<Point> findPath(Point start, Point goal, EntityKind mover)
+   {
+      if (start.adjacent(goal))
+      {
+         return new LinkedList<>();
+      }
+
+      if (++this.stamp == 0)
+      {
+         Arrays.fill(this.seen, 0);
+         this.stamp = 1;
+      }
+      this.openSize = 0;
+
+      int startCell = this.cellOf(start);
+      this.visit(startCell, 0, -1);
+      this.push(heuristic(start, goal), startCell);
+
+      while (this.openSize > 0)
+      {
+         long top = this.pop();
+         int cell = (int)top;
+         int x = cell % this.numCols;
+         int y = cell / this.numCols;
+         int g = this.cost[cell];
+
+         if ((int)(top >>> 32) > g + heuristic(x, y, goal))
+         {
+            continue;  // stale heap entry
+         }
+
+         if (Math.abs(x - goal.x) + Math.abs(y - goal.y) == 1)
+         {
+            return this.buildPath(cell, startCell);
+         }
+
+         for (int i = 0; i < DX.length; i++)
+         {
+            int nextX = x + DX[i];
+            int nextY = y + DY[i];
+            if (!this.world.withinBounds(nextX, nextY) ||
+               !DistanceField.canEnter(this.world, nextX, nextY, mover))
+            {
+               continue;
+            }
+
+            int nextCell = nextY * this.numCols + nextX;
+            if (this.seen[nextCell] != this.stamp ||
+               g + 1 < this.cost[nextCell])
+            {
+               this.visit(nextCell, g + 1, cell);
+               this.push(g + 1 + heuristic(nextX, nextY, goal), nextCell);
+            }
+         }
+      }
+
+      return null;
+   }
+
+   private List<Point> buildPath(int cell, int startCell)
+   {
+      LinkedList<Point> path = new LinkedList<>();
+      while (cell != startCell)
+      {
+         path.addFirst(this.world.pointAt(cell % this.numCols,
+            cell / this.numCols));
+         cell = this.cameFrom[cell];
+      }
+      return path;
+   }
+
+   private static int heuristic(Point pos, Point goal)
+   {
+      return heuristic(pos.x, pos.y, goal);
+   }
+
+   /* steps to reach a cell next to goal, never overestimated */
+   private static int heuristic(int x, int y, Point goal)
+   {
+      return Math.max(Math.abs(x - goal.x) + Math.abs(y - goal.y) - 1, 0);
+   }
+
+   private void visit(int cell, int g, int from)
+   {
+      this.seen[cell] = this.stamp;
+      this.cost[cell] = g;
+      this.cameFrom[cell] = from;
+   }
+
+   private int cellOf(Point pos)
+   {
+      return pos.y * this.numCols + pos.x;
+   }
+
+   private void push(int f, int cell)
+   {
+      if (this.openSize == this.open.length)
+      {
+         this.open = Arrays.copyOf(this.open, this.open.length * 2);
+      }
+
+      long entry = ((long)f << 32) | cell;
+      int index = this.openSize++;
+      while (index > 0)
+      {
+         int parent = (index - 1) >>> 1;
+         if (this.open[parent] <= entry)
+         {
+            break;
+         }
+         this.open[index] = this.open[parent];
+         index = parent;
+      }
+      this.open[index] = entry;
+   }
+
+   private long pop()
+   {
+      long top = this.open[0];
+      long last = this.open[--this.openSize];
+      int index = 0;
+      int half = this.openSize >>> 1;
+      while (index < half)
+      {
+         int child = 2 * index + 1;
+         if (child + 1 < this.openSize && this.open[child + 1] < this.open[child])
+         {
+            child++;
+         }
+         if (last <= this.open[child])
+         {
+            break;
+         }
+         this.open[index] = this.open[child];
+         index = child;
+      }
+      if (this.openSize > 0)
+      {
+         this.open[index] = last;
+      }
+      return top;
+   }
+}
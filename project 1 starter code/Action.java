@@ -10,6 +10,9 @@ final class Action
    public ImageStore imageStore;
    public int repeatCount;
 
+   /* true while a pending event refers to this action */
+   public boolean queued;
+
    public Action(ActionKind kind, Entity entity, WorldModel world,
       ImageStore imageStore, int repeatCount)
    {
@@ -68,18 +71,42 @@ final class Action
 
    public void executeAnimationAction(EventScheduler scheduler)
    {
-      this.entity.nextImage();
+      this.entity.nextImage(this.world);
 
       if (this.repeatCount != 1)
       {
          scheduler.scheduleEvent(this.entity,
-            this.entity.createAnimationAction(
+            this.entity.createAnimationAction(this.world,
                     Math.max(this.repeatCount - 1, 0)),
             this.entity.getAnimationPeriod());
       }
    }
 
    public void executeAction(EventScheduler scheduler)
+    {
+       if (!SlowActionEvent.TYPE.isEnabled())
+       {
+          this.executeKind(scheduler);
+          return;
+       }
+
+       SlowActionEvent slow = new SlowActionEvent();
+       slow.begin();
+       this.executeKind(scheduler);
+       slow.end();
+       if (slow.shouldCommit())
+       {
+          slow.actionKind = this.kind.name();
+          slow.entityKind = this.entity.kind.name();
+          slow.entityId = this.entity.id;
+          slow.x = this.entity.position.x;
+          slow.y = this.entity.position.y;
+          slow.commit();
+       }
+    }
+
+    /* executeAction without the flight recorder event */
+    private void executeKind(EventScheduler scheduler)
     {
        switch (this.kind)
        {
@@ -0,0 +1,332 @@
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ActorSystem: an alternative to the event queue in which every entity is an
+EntityActor on its own thread, virtual where the JDK has them. The actors
+share a virtual clock: runUntil moves it to the earliest wake-up, wakes every
+actor due then and waits for all of them to go back to sleep before moving it
+again. Actions still mutate the world, but only on the single world channel
+thread, one at a time
+
+Without virtual threads (before JDK 21) each live actor holds a platform
+thread, which is only practical for small worlds
+ */
+
+final class ActorSystem
+   implements Clock
+{
+   public final boolean virtualThreads;
+
+   private final EventScheduler scheduler;
+   private final ExecutorService threads;
+   private final ExecutorService channel;
+
+   private final ReentrantLock lock;
+   private final Condition idle;
+   private final PriorityQueue<Wakeup> sleepers;
+   private volatile long time;
+   private int running;
+   private long executed;
+   private RuntimeException failure;
+
+   public ActorSystem(EventScheduler scheduler, long startTime)
+   {
+      ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+
+      this.virtualThreads = virtual != null;
+      this.scheduler = scheduler;
+      this.threads = virtual != null ? virtual :
+         Executors.newCachedThreadPool(daemonThreads("actor"));
+      this.channel = Executors.newSingleThreadExecutor(
+         daemonThreads("world-channel"));
+      this.lock = new ReentrantLock();
+      this.idle = this.lock.newCondition();
+      this.sleepers = new PriorityQueue<>(
+         (lft, rht) -> Long.compare(lft.time, rht.time));
+      this.time = startTime;
+   }
+
+   public long currentTime()
+   {
+      return this.time;
+   }
+
+   /* queues action for entity at time, starting the entity's actor if
+      it is not running */
+   public void post(Entity entity, Action action, long time)
+   {
+      this.lock.lock();
+      try
+      {
+         EntityActor actor = entity.actor;
+         if (actor == null)
+         {
+            actor = new EntityActor(entity, this, this.lock.newCondition());
+            entity.actor = actor;
+         }
+
+         actor.mailbox.add(new Event(action, time, entity));
+
+         if (!actor.started)
+         {
+            actor.started = true;
+            this.running++;
+            this.threads.execute(actor);
+         }
+         else if (actor.sleeping && time < actor.wakeup.time)
+         {
+            /* the old wake-up is left in the heap and skipped */
+            this.sleep(actor, time);
+         }
+      }
+      finally
+      {
+         this.lock.unlock();
+      }
+   }
+
+   /*
+      Empties entity's mailbox, returning how many messages it held; a
+      sleeping actor stops when it next wakes.
+   */
+   public int unschedule(Entity entity)
+   {
+      this.lock.lock();
+      try
+      {
+         EntityActor actor = entity.actor;
+         if (actor == null)
+         {
+            return 0;
+         }
+
+         int unscheduled = actor.mailbox.size();
+         for (Event message : actor.mailbox)
+         {
+            message.action.queued = false;
+         }
+         actor.mailbox.clear();
+         return unscheduled;
+      }
+      finally
+      {
+         this.lock.unlock();
+      }
+   }
+
+   /*
+      Runs every action due before end, then leaves the clock at end.
+      Returns the number of actions executed.
+   */
+   public long runUntil(long end)
+   {
+      this.lock.lock();
+      try
+      {
+         long before = this.executed;
+         while (true)
+         {
+            while (this.running > 0)
+            {
+               this.idle.awaitUninterruptibly();
+            }
+            if (this.failure != null)
+            {
+               throw this.failure;
+            }
+
+            Wakeup first = this.nextWakeup();
+            if (first == null || first.time >= end)
+            {
+               break;
+            }
+
+            this.time = Math.max(this.time, first.time);
+            while ((first = this.nextWakeup()) != null &&
+               first.time <= this.time)
+            {
+               EntityActor actor = this.sleepers.poll().actor;
+               actor.sleeping = false;
+               actor.wakeup = null;
+               this.running++;
+               actor.wake.signal();
+            }
+         }
+
+         this.time = Math.max(this.time, end);
+         return this.executed - before;
+      }
+      finally
+      {
+         this.lock.unlock();
+      }
+   }
+
+   public void shutdown()
+   {
+      this.threads.shutdownNow();
+      this.channel.shutdownNow();
+   }
+
+   /*
+      Called on an actor's thread: the next message once the clock reaches
+      it, or null when the mailbox is empty and the actor should stop.
+   */
+   public Event awaitNext(EntityActor actor)
+   {
+      this.lock.lock();
+      try
+      {
+         while (true)
+         {
+            Event next = actor.earliest();
+            if (next == null)
+            {
+               actor.started = false;
+               this.finishedRunning();
+               return null;
+            }
+            if (next.time <= this.time)
+            {
+               actor.mailbox.remove(next);
+               return next;
+            }
+
+            this.sleep(actor, next.time);
+            this.finishedRunning();
+            while (actor.sleeping)
+            {
+               actor.wake.await();
+            }
+         }
+      }
+      catch (InterruptedException e)
+      {
+         /* shutdown */
+         actor.started = false;
+         actor.sleeping = false;
+         return null;
+      }
+      finally
+      {
+         this.lock.unlock();
+      }
+   }
+
+   /* runs message on the world channel and waits for it */
+   public void deliver(Event message)
+   {
+      try
+      {
+         this.channel.submit(() -> {
+            if (this.scheduler.metrics != null)
+            {
+               this.scheduler.metrics.eventExecuted(message, this.time);
+            }
+            message.action.queued = false;
+            message.action.executeAction(this.scheduler);
+            this.executed++;
+         }).get();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("interrupted delivering an action",
+            e);
+      }
+      catch (ExecutionException e)
+      {
+         throw e.getCause() instanceof RuntimeException ?
+            (RuntimeException)e.getCause() :
+            new IllegalStateException(e.getCause());
+      }
+   }
+
+   /* an actor's thread died; runUntil rethrows the failure */
+   public void actorFailed(EntityActor actor, RuntimeException e)
+   {
+      this.lock.lock();
+      try
+      {
+         actor.started = false;
+         actor.sleeping = false;
+         if (this.failure == null)
+         {
+            this.failure = e;
+         }
+         this.finishedRunning();
+      }
+      finally
+      {
+         this.lock.unlock();
+      }
+   }
+
+   private void sleep(EntityActor actor, long wakeTime)
+   {
+      actor.sleeping = true;
+      actor.wakeup = new Wakeup(wakeTime, actor);
+      this.sleepers.add(actor.wakeup);
+   }
+
+   /* the earliest wake-up still current for its actor */
+   private Wakeup nextWakeup()
+   {
+      Wakeup first;
+      while ((first = this.sleepers.peek()) != null &&
+         first.actor.wakeup != first)
+      {
+         this.sleepers.poll();
+      }
+      return first;
+   }
+
+   private void finishedRunning()
+   {
+      if (--this.running == 0)
+      {
+         this.idle.signal();
+      }
+   }
+
+   /* Executors.newVirtualThreadPerTaskExecutor, when the JDK has it */
+   private static ExecutorService newVirtualThreadPerTaskExecutor()
+   {
+      try
+      {
+         return (ExecutorService)Executors.class
+            .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }
+      catch (ReflectiveOperationException e)
+      {
+         return null;
+      }
+   }
+
+   private static ThreadFactory daemonThreads(String name)
+   {
+      return task -> {
+         Thread thread = new Thread(task, name);
+         thread.setDaemon(true);
+         return thread;
+      };
+   }
+
+   static final class Wakeup
+   {
+      public final long time;
+      public final EntityActor actor;
+
+      public Wakeup(long time, EntityActor actor)
+      {
+         this.time = time;
+         this.actor = actor;
+      }
+   }
+}
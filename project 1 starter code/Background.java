@@ -15,6 +15,6 @@ final class Background
 
     public void setBackgroundCell(WorldModel world, Point pos)
     {
-       world.background[pos.y][pos.x] = this;
+       world.background.set(pos.x, pos.y, this);
     }
 }
@@ -0,0 +1,120 @@
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+/*
+BackgroundCache: the world's background tiles composited into a few large
+images of CHUNK_TILES x CHUNK_TILES tiles each, so any rectangle of the
+background is drawn with one blit per chunk it overlaps. A chunk is
+recomposited the next time it is drawn after WorldModel.setBackground changes
+one of its cells
+ */
+
+final class BackgroundCache
+{
+   public static final int CHUNK_TILES = 32;
+
+   private final WorldModel world;
+   private final PApplet screen;
+   private final int tileWidth;
+   private final int tileHeight;
+   private final int chunkRows;
+   private final int chunkCols;
+   private final PImage[] chunks;
+   private final DirtyCells stale;
+
+   public BackgroundCache(WorldModel world, PApplet screen, int tileWidth,
+      int tileHeight)
+   {
+      this.world = world;
+      this.screen = screen;
+      this.tileWidth = tileWidth;
+      this.tileHeight = tileHeight;
+      this.chunkRows = (world.numRows + CHUNK_TILES - 1) / CHUNK_TILES;
+      this.chunkCols = (world.numCols + CHUNK_TILES - 1) / CHUNK_TILES;
+      this.chunks = new PImage[this.chunkRows * this.chunkCols];
+      this.stale = new DirtyCells(this.chunks.length);
+   }
+
+   /* the background of cell (x, y) has changed */
+   public void invalidate(int x, int y)
+   {
+      this.stale.mark((y / CHUNK_TILES) * this.chunkCols + x / CHUNK_TILES);
+   }
+
+   /*
+      Draws the background of the numCols x numRows cells starting at world
+      cell (col, row) into target, with its top left corner at (left, top).
+      Cells off the world are left alone.
+   */
+   public void draw(PGraphics target, int col, int row, int numCols,
+      int numRows, int left, int top)
+   {
+      this.stale.drain(chunk -> this.chunks[chunk] = null);
+
+      int minCol = Math.max(col, 0);
+      int minRow = Math.max(row, 0);
+      int maxCol = Math.min(col + numCols, this.world.numCols);
+      int maxRow = Math.min(row + numRows, this.world.numRows);
+
+      for (int chunkRow = minRow / CHUNK_TILES;
+         chunkRow * CHUNK_TILES < maxRow; chunkRow++)
+      {
+         for (int chunkCol = minCol / CHUNK_TILES;
+            chunkCol * CHUNK_TILES < maxCol; chunkCol++)
+         {
+            int firstCol = chunkCol * CHUNK_TILES;
+            int firstRow = chunkRow * CHUNK_TILES;
+
+            /* the part of the request inside this chunk, in world cells */
+            int fromCol = Math.max(minCol, firstCol);
+            int fromRow = Math.max(minRow, firstRow);
+            int toCol = Math.min(maxCol, firstCol + CHUNK_TILES);
+            int toRow = Math.min(maxRow, firstRow + CHUNK_TILES);
+
+            int u = (fromCol - firstCol) * this.tileWidth;
+            int v = (fromRow - firstRow) * this.tileHeight;
+            int width = (toCol - fromCol) * this.tileWidth;
+            int height = (toRow - fromRow) * this.tileHeight;
+
+            target.image(this.chunk(chunkRow, chunkCol),
+               left + (fromCol - col) * this.tileWidth,
+               top + (fromRow - row) * this.tileHeight, width, height,
+               u, v, u + width, v + height);
+         }
+      }
+   }
+
+   private PImage chunk(int chunkRow, int chunkCol)
+   {
+      int index = chunkRow * this.chunkCols + chunkCol;
+      if (this.chunks[index] == null)
+      {
+         this.chunks[index] = this.composite(chunkRow, chunkCol);
+      }
+      return this.chunks[index];
+   }
+
+   private PImage composite(int chunkRow, int chunkCol)
+   {
+      int firstCol = chunkCol * CHUNK_TILES;
+      int firstRow = chunkRow * CHUNK_TILES;
+      int cols = Math.min(CHUNK_TILES, this.world.numCols - firstCol);
+      int rows = Math.min(CHUNK_TILES, this.world.numRows - firstRow);
+
+      PImage chunk = this.screen.createImage(cols * this.tileWidth,
+         rows * this.tileHeight, PApplet.RGB);
+      for (int row = 0; row < rows; row++)
+      {
+         for (int col = 0; col < cols; col++)
+         {
+            PImage tile = Functions.getCurrentImage(
+               this.world.getBackgroundCell(firstCol + col, firstRow + row));
+            chunk.copy(tile, 0, 0, tile.width, tile.height,
+               col * this.tileWidth, row * this.tileHeight, this.tileWidth,
+               this.tileHeight);
+         }
+      }
+      return chunk;
+   }
+}
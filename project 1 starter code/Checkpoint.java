@@ -0,0 +1,385 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/*
+Checkpoint: everything needed to resume a running simulation, taken at one
+instant between events. Capturing copies the world's backgrounds and entities,
+every pending event and the state of Functions.rand into plain arrays, so the
+live world can keep running while a CheckpointWriter puts the copy on disk.
+Layout, big-endian like WorldSnapshot:
+
+   int magic, int version, long time, int numRows, int numCols
+   int paletteSize, then per entry: short length, UTF-8 background id
+   numRows * numCols shorts: palette index of each cell, row by row
+   int entityCount, then per entity the same record as a WorldSnapshot
+   int eventCount, then per event:
+      int entity (index into the entities above), byte ActionKind ordinal,
+      int repeatCount, long delay (ms after time, already time scaled)
+   int length, serialized Functions.rand
+
+Pending events are kept per entity in the order they were scheduled, so a
+restored entity's chain matches the original. Actor mode keeps its events in
+the actors and cannot be checkpointed
+ */
+
+final class Checkpoint
+{
+   public static final String EXTENSION = ".wchk";
+   public static final int MAGIC = 0x57434b31;  // "WCK1"
+   public static final int VERSION = 1;
+
+   /* magic, version, time, numRows, numCols and paletteSize */
+   private static final int HEADER_BYTES = 28;
+
+   /* entity, kind, repeatCount and delay */
+   private static final int EVENT_BYTES = 4 + 1 + 4 + 8;
+
+   /* clock time when captured */
+   public final long time;
+
+   private final int numRows;
+   private final int numCols;
+   private final List<String> palette;
+   private final short[] cells;
+
+   private final int entityCount;
+   private final byte[] kinds;
+   private final int[] xs;
+   private final int[] ys;
+   private final int[] resourceLimits;
+   private final int[] resourceCounts;
+   private final int[] actionPeriods;
+   private final int[] animationPeriods;
+   private final int[] imageIndices;
+   private final String[] ids;
+
+   private final int eventCount;
+   private final int[] eventEntities;
+   private final byte[] eventKinds;
+   private final int[] eventRepeats;
+   private final long[] eventDelays;
+
+   private final byte[] random;
+
+   /*
+      Copies the state of world and scheduler.  Must be called on the thread
+      that runs the scheduler, between calls to updateOnTime.
+   */
+   public static Checkpoint capture(WorldModel world,
+      EventScheduler scheduler)
+   {
+      if (scheduler.actors != null)
+      {
+         throw new IllegalStateException(
+            "cannot checkpoint a scheduler running actors");
+      }
+      return new Checkpoint(world, scheduler);
+   }
+
+   private Checkpoint(WorldModel world, EventScheduler scheduler)
+   {
+      this.time = scheduler.clock.currentTime();
+      this.numRows = world.numRows;
+      this.numCols = world.numCols;
+
+      Map<String, Integer> paletteIndex = new HashMap<>();
+      this.palette = new ArrayList<>();
+      this.cells = new short[this.numRows * this.numCols];
+      for (int y = 0; y < this.numRows; y++)
+      {
+         for (int x = 0; x < this.numCols; x++)
+         {
+            String id = world.getBackgroundCell(x, y).id;
+            Integer index = paletteIndex.get(id);
+            if (index == null)
+            {
+               index = this.palette.size();
+               paletteIndex.put(id, index);
+               this.palette.add(id);
+            }
+            this.cells[y * this.numCols + x] = (short)(int)index;
+         }
+      }
+
+      List<Entity> entities = new ArrayList<>(world.entities);
+      this.entityCount = entities.size();
+      this.kinds = new byte[this.entityCount];
+      this.xs = new int[this.entityCount];
+      this.ys = new int[this.entityCount];
+      this.resourceLimits = new int[this.entityCount];
+      this.resourceCounts = new int[this.entityCount];
+      this.actionPeriods = new int[this.entityCount];
+      this.animationPeriods = new int[this.entityCount];
+      this.imageIndices = new int[this.entityCount];
+      this.ids = new String[this.entityCount];
+
+      Map<Entity, Integer> handles = new IdentityHashMap<>();
+      List<Event> events = new ArrayList<>();
+      for (int i = 0; i < this.entityCount; i++)
+      {
+         Entity entity = entities.get(i);
+         handles.put(entity, i);
+         this.kinds[i] = (byte)entity.kind.ordinal();
+         this.xs[i] = entity.position.x;
+         this.ys[i] = entity.position.y;
+         this.resourceLimits[i] = entity.resourceLimit;
+         this.resourceCounts[i] = entity.resourceCount;
+         this.actionPeriods[i] = entity.actionPeriod;
+         this.animationPeriods[i] = entity.animationPeriod;
+         this.imageIndices[i] = entity.imageIndex;
+         this.ids[i] = entity.id;
+
+         /* the chain is newest first; record it oldest first */
+         int first = events.size();
+         for (Event event = entity.pendingEvents; event != null;
+            event = event.nextPending)
+         {
+            events.add(event);
+         }
+         for (int lo = first, hi = events.size() - 1; lo < hi; lo++, hi--)
+         {
+            Event swap = events.get(lo);
+            events.set(lo, events.get(hi));
+            events.set(hi, swap);
+         }
+      }
+
+      this.eventCount = events.size();
+      this.eventEntities = new int[this.eventCount];
+      this.eventKinds = new byte[this.eventCount];
+      this.eventRepeats = new int[this.eventCount];
+      this.eventDelays = new long[this.eventCount];
+      for (int i = 0; i < this.eventCount; i++)
+      {
+         Event event = events.get(i);
+         this.eventEntities[i] = handles.get(event.entity);
+         this.eventKinds[i] = (byte)event.action.kind.ordinal();
+         this.eventRepeats[i] = event.action.repeatCount;
+         this.eventDelays[i] = Math.max(event.time - this.time, 0);
+      }
+
+      this.random = serialize(Functions.rand);
+   }
+
+   public int entityCount()
+   {
+      return this.entityCount;
+   }
+
+   public int eventCount()
+   {
+      return this.eventCount;
+   }
+
+   /* writes beside file and then renames, so file is never half written */
+   public void write(Path file) throws IOException
+   {
+      /* past this the cells' short palette indexes have wrapped */
+      if (this.palette.size() > Short.MAX_VALUE + 1)
+      {
+         throw new IOException("too many background kinds");
+      }
+
+      Path partial = file.resolveSibling(file.getFileName() + ".part");
+      try (OutputStream fileOut = Files.newOutputStream(partial);
+         DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(fileOut, 1 << 16)))
+      {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeLong(this.time);
+         out.writeInt(this.numRows);
+         out.writeInt(this.numCols);
+
+         out.writeInt(this.palette.size());
+         for (String id : this.palette)
+         {
+            WorldSnapshot.writeString(out, id);
+         }
+         for (short cell : this.cells)
+         {
+            out.writeShort(cell);
+         }
+
+         out.writeInt(this.entityCount);
+         for (int i = 0; i < this.entityCount; i++)
+         {
+            out.writeByte(this.kinds[i]);
+            out.writeInt(this.xs[i]);
+            out.writeInt(this.ys[i]);
+            out.writeInt(this.resourceLimits[i]);
+            out.writeInt(this.resourceCounts[i]);
+            out.writeInt(this.actionPeriods[i]);
+            out.writeInt(this.animationPeriods[i]);
+            out.writeInt(this.imageIndices[i]);
+            WorldSnapshot.writeString(out, this.ids[i]);
+         }
+
+         out.writeInt(this.eventCount);
+         for (int i = 0; i < this.eventCount; i++)
+         {
+            out.writeInt(this.eventEntities[i]);
+            out.writeByte(this.eventKinds[i]);
+            out.writeInt(this.eventRepeats[i]);
+            out.writeLong(this.eventDelays[i]);
+         }
+
+         out.writeInt(this.random.length);
+         out.write(this.random);
+      }
+
+      Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING,
+         StandardCopyOption.ATOMIC_MOVE);
+   }
+
+   /*
+      Loads a checkpoint into an empty world and schedules its pending events
+      relative to the scheduler's clock, replacing Functions.rand with the
+      saved generator.  The world must be the size the checkpoint was taken
+      at.  Entities whose cell is already taken are skipped along with their
+      events; the number skipped is returned.  A truncated or corrupt file is
+      an IOException naming it, though whatever was read before the damage
+      stays in world.
+   */
+   public static int restore(Path file, WorldModel world,
+      EventScheduler scheduler, ImageStore imageStore) throws IOException
+   {
+      ByteBuffer in;
+      try (FileChannel channel = FileChannel.open(file,
+         StandardOpenOption.READ))
+      {
+         in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+
+      if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC)
+      {
+         throw new IOException(String.format("%s is not a checkpoint", file));
+      }
+      int version = in.getInt();
+      if (version != VERSION)
+      {
+         throw new IOException(String.format(
+            "unsupported checkpoint version %d", version));
+      }
+      in.getLong();
+      int numRows = in.getInt();
+      int numCols = in.getInt();
+      if (numRows != world.numRows || numCols != world.numCols)
+      {
+         throw new IOException(String.format(
+            "%s holds a %dx%d world; resume it with %s %dx%d", file, numCols,
+            numRows, VirtualWorld.SIZE_FLAG, numCols, numRows));
+      }
+
+      try
+      {
+         WorldSnapshot.readBackgrounds(in, file, numRows, numCols, world,
+            imageStore);
+
+         Entity[] entities = new Entity[WorldSnapshot.readCount(in, file,
+            WorldSnapshot.MIN_ENTITY_BYTES, "entities")];
+         int skipped = 0;
+         for (int i = 0; i < entities.length; i++)
+         {
+            Entity entity = WorldSnapshot.readEntity(in, file, world,
+               imageStore);
+            if (world.tryAddEntity(entity))
+            {
+               entities[i] = entity;
+            }
+            else
+            {
+               skipped++;
+            }
+         }
+
+         ActionKind[] actionKinds = ActionKind.values();
+         long now = scheduler.clock.currentTime();
+         int eventCount = WorldSnapshot.readCount(in, file, EVENT_BYTES,
+            "events");
+         for (int i = 0; i < eventCount; i++)
+         {
+            int handle = in.getInt();
+            int ordinal = in.get();
+            int repeatCount = in.getInt();
+            long delay = in.getLong();
+            if (handle < 0 || handle >= entities.length || ordinal < 0 ||
+               ordinal >= actionKinds.length || delay < 0)
+            {
+               throw WorldSnapshot.corrupt(file, "events");
+            }
+            Entity entity = entities[handle];
+            if (entity == null)
+            {
+               continue;
+            }
+
+            Action action = actionKinds[ordinal] == ActionKind.ACTIVITY ?
+               entity.createActivityAction(world, imageStore) :
+               entity.createAnimationAction(world, repeatCount);
+            scheduler.scheduleEventAt(entity, action, now + delay);
+         }
+
+         byte[] random = new byte[WorldSnapshot.readCount(in, file, 1,
+            "random")];
+         in.get(random);
+         Functions.rand = deserialize(random);
+
+         world.compact();
+         return skipped;
+      }
+      catch (BufferUnderflowException e)
+      {
+         throw WorldSnapshot.truncated(file, e);
+      }
+   }
+
+   private static byte[] serialize(Random random)
+   {
+      try
+      {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+         {
+            out.writeObject(random);
+         }
+         return bytes.toByteArray();
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   private static Random deserialize(byte[] random) throws IOException
+   {
+      try (ObjectInputStream in = new ObjectInputStream(
+         new ByteArrayInputStream(random)))
+      {
+         return (Random)in.readObject();
+      }
+      catch (ClassNotFoundException | ClassCastException e)
+      {
+         throw new IOException("bad random state in checkpoint", e);
+      }
+   }
+}
@@ -0,0 +1,65 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+CheckpointWriter: writes checkpoints on a background thread. The simulation
+thread only pays for Checkpoint.capture; the file is written while it carries
+on. Checkpoints are written one at a time in the order they were saved
+ */
+
+final class CheckpointWriter
+{
+   private final ExecutorService writer;
+
+   public CheckpointWriter()
+   {
+      this.writer = Executors.newSingleThreadExecutor(task -> {
+         Thread thread = new Thread(task, "checkpoint-writer");
+         thread.setDaemon(true);
+         return thread;
+      });
+   }
+
+   /*
+      Captures world and scheduler now, on the calling thread, and writes
+      the checkpoint to file in the background.  The future completes with
+      the checkpoint once it is on disk.
+   */
+   public Future<Checkpoint> save(WorldModel world, EventScheduler scheduler,
+      Path file)
+   {
+      Checkpoint checkpoint = Checkpoint.capture(world, scheduler);
+      return this.writer.submit(() -> {
+         try
+         {
+            checkpoint.write(file);
+            return checkpoint;
+         }
+         catch (IOException e)
+         {
+            System.err.println(String.format("checkpoint %s: %s", file,
+               e.getMessage()));
+            throw new UncheckedIOException(e);
+         }
+      });
+   }
+
+   /* waits for checkpoints already saved to be written */
+   public void close()
+   {
+      this.writer.shutdown();
+      try
+      {
+         this.writer.awaitTermination(1, TimeUnit.MINUTES);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+}
@@ -0,0 +1,132 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ChunkedGrid: a grid of references kept as SIZE x SIZE chunks, each allocated
+only when one of its cells is first set to something other than the chunk's
+fill. Until then every cell of the chunk reads as the fill, so a grid that is
+mostly one value costs a reference per chunk rather than one per cell.
+Chunks are created atomically; cell writes are plain stores, as they were in
+the dense arrays this replaces
+ */
+
+final class ChunkedGrid<T>
+{
+   public static final int SHIFT = 5;
+   public static final int SIZE = 1 << SHIFT;
+   public static final int MASK = SIZE - 1;
+
+   public final int numRows;
+   public final int numCols;
+   public final int chunkRows;
+   public final int chunkCols;
+   private final AtomicReferenceArray<Object[]> chunks;
+   private final Object[] fills;
+
+   public ChunkedGrid(int numRows, int numCols, T fill)
+   {
+      this.numRows = numRows;
+      this.numCols = numCols;
+      this.chunkRows = (numRows + MASK) >> SHIFT;
+      this.chunkCols = (numCols + MASK) >> SHIFT;
+      this.chunks = new AtomicReferenceArray<>(this.chunkRows *
+         this.chunkCols);
+      this.fills = new Object[this.chunkRows * this.chunkCols];
+
+      for (int chunk = 0; chunk < this.fills.length; chunk++)
+      {
+         this.fills[chunk] = fill;
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   public T get(int x, int y)
+   {
+      int chunk = (y >> SHIFT) * this.chunkCols + (x >> SHIFT);
+      Object[] cells = this.chunks.get(chunk);
+      if (cells == null)
+      {
+         return (T)this.fills[chunk];
+      }
+      return (T)cells[((y & MASK) << SHIFT) | (x & MASK)];
+   }
+
+   public void set(int x, int y, T value)
+   {
+      int chunk = (y >> SHIFT) * this.chunkCols + (x >> SHIFT);
+      Object[] cells = this.chunks.get(chunk);
+      if (cells == null)
+      {
+         if (value == this.fills[chunk])
+         {
+            return;
+         }
+         cells = this.allocate(chunk);
+      }
+      cells[((y & MASK) << SHIFT) | (x & MASK)] = value;
+   }
+
+   /* chunks holding their own cells */
+   public int allocatedChunks()
+   {
+      int allocated = 0;
+      for (int chunk = 0; chunk < this.chunks.length(); chunk++)
+      {
+         if (this.chunks.get(chunk) != null)
+         {
+            allocated++;
+         }
+      }
+      return allocated;
+   }
+
+   /*
+      Frees every chunk whose cells all hold the same reference, making that
+      its fill.  Only safe while no other thread is writing.
+   */
+   public void compact()
+   {
+      for (int chunk = 0; chunk < this.chunks.length(); chunk++)
+      {
+         Object[] cells = this.chunks.get(chunk);
+         if (cells != null && this.uniform(chunk, cells))
+         {
+            this.fills[chunk] = cells[0];
+            this.chunks.set(chunk, null);
+         }
+      }
+   }
+
+   private Object[] allocate(int chunk)
+   {
+      Object[] cells = new Object[SIZE * SIZE];
+      Arrays.fill(cells, this.fills[chunk]);
+      if (!this.chunks.compareAndSet(chunk, null, cells))
+      {
+         cells = this.chunks.get(chunk);
+      }
+      return cells;
+   }
+
+   /* the cells of chunk inside the grid are all one reference */
+   private boolean uniform(int chunk, Object[] cells)
+   {
+      int firstRow = (chunk / this.chunkCols) << SHIFT;
+      int firstCol = (chunk % this.chunkCols) << SHIFT;
+      int rows = Math.min(SIZE, this.numRows - firstRow);
+      int cols = Math.min(SIZE, this.numCols - firstCol);
+
+      Object first = cells[0];
+      for (int row = 0; row < rows; row++)
+      {
+         for (int col = 0; col < cols; col++)
+         {
+            if (cells[(row << SHIFT) | col] != first)
+            {
+               return false;
+            }
+         }
+      }
+      return true;
+   }
+}
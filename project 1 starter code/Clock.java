@@ -0,0 +1,8 @@
+/*
+Clock: where the EventScheduler gets the current time, in milliseconds
+ */
+
+interface Clock
+{
+   long currentTime();
+}
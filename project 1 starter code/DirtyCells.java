@@ -0,0 +1,90 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+/*
+DirtyCells: the set of grid cells whose picture has changed since the view
+last drew them, one bit per cell. The bits are kept in pages of PAGE_CELLS
+cells that are allocated on the first mark, so a huge, mostly idle world
+only pays for the pages where something happened. Marking is lock-free, so
+simulation threads can mark while the renderer drains
+ */
+
+final class DirtyCells
+{
+   public static final int PAGE_SHIFT = 12;
+   public static final int PAGE_CELLS = 1 << PAGE_SHIFT;
+   private static final int PAGE_WORDS = PAGE_CELLS >>> 6;
+
+   private final AtomicReferenceArray<AtomicLongArray> pages;
+
+   public DirtyCells(int cellCount)
+   {
+      this.pages = new AtomicReferenceArray<>(
+         (cellCount + PAGE_CELLS - 1) >>> PAGE_SHIFT);
+   }
+
+   public void mark(int cell)
+   {
+      int pageIndex = cell >>> PAGE_SHIFT;
+      AtomicLongArray page = this.pages.get(pageIndex);
+      if (page == null)
+      {
+         this.pages.compareAndSet(pageIndex, null,
+            new AtomicLongArray(PAGE_WORDS));
+         page = this.pages.get(pageIndex);
+      }
+
+      long bit = 1L << cell;
+      int word = (cell >>> 6) & (PAGE_WORDS - 1);
+      long old = page.get(word);
+      while ((old & bit) == 0 && !page.compareAndSet(word, old, old | bit))
+      {
+         old = page.get(word);
+      }
+   }
+
+   /* hands every dirty cell to action and clears it */
+   public void drain(IntConsumer action)
+   {
+      for (int pageIndex = 0; pageIndex < this.pages.length(); pageIndex++)
+      {
+         AtomicLongArray page = this.pages.get(pageIndex);
+         if (page == null)
+         {
+            continue;
+         }
+
+         for (int word = 0; word < PAGE_WORDS; word++)
+         {
+            if (page.get(word) == 0)
+            {
+               continue;
+            }
+
+            long bits = page.getAndSet(word, 0);
+            int base = (pageIndex << PAGE_SHIFT) + (word << 6);
+            while (bits != 0)
+            {
+               action.accept(base + Long.numberOfTrailingZeros(bits));
+               bits &= bits - 1;
+            }
+         }
+      }
+   }
+
+   public void clear()
+   {
+      for (int pageIndex = 0; pageIndex < this.pages.length(); pageIndex++)
+      {
+         AtomicLongArray page = this.pages.get(pageIndex);
+         if (page != null)
+         {
+            for (int word = 0; word < PAGE_WORDS; word++)
+            {
+               page.set(word, 0);
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,334 @@
+import java.util.Arrays;
+
+/*
+DistanceField: the number of steps from every cell to the nearest entity of one
+target kind, built by a multi-source breadth-first search over the occupancy
+grid. Obstacles and the other entities that never move are walls; movers are
+not, since they are gone again a few ticks later. The field is patched in place
+whenever a target or a wall appears or disappears, so any number of seekers can
+read their next step without searching
+ */
+
+final class DistanceField
+{
+   public static final int WALL = -1;
+   public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+   private static final int[] DX = { -1, 1, 0, 0 };
+   private static final int[] DY = { 0, 0, -1, 1 };
+
+   public final EntityKind target;
+   private final WorldModel world;
+   private final int numRows;
+   private final int numCols;
+   private final int[] dist;
+
+   /* scratch space for a single update */
+   private final int[] queue;
+   private final boolean[] queued;
+   private int head;
+   private int tail;
+   private int count;
+
+   public DistanceField(WorldModel world, EntityKind target)
+   {
+      this.target = target;
+      this.world = world;
+      this.numRows = world.numRows;
+      this.numCols = world.numCols;
+      this.dist = new int[this.numRows * this.numCols];
+      this.queue = new int[this.dist.length];
+      this.queued = new boolean[this.dist.length];
+
+      this.rebuild();
+   }
+
+   public synchronized int distanceAt(Point pos)
+   {
+      return this.dist[pos.y * this.numCols + pos.x];
+   }
+
+   public synchronized void rebuild()
+   {
+      Arrays.fill(this.dist, UNREACHABLE);
+      for (int cell = 0; cell < this.dist.length; cell++)
+      {
+         int state = this.stateOf(cell);
+         if (state != UNREACHABLE)
+         {
+            this.dist[cell] = state;
+            if (state == 0)
+            {
+               this.enqueue(cell);
+            }
+         }
+      }
+      this.propagate();
+   }
+
+   /*
+      Called whenever the occupant of pos changes.  Brings the field back in
+      line with the world, touching only the cells whose distance changes.
+   */
+   public synchronized void cellChanged(Point pos)
+   {
+      int cell = pos.y * this.numCols + pos.x;
+      int before = this.dist[cell];
+      int after = this.stateOf(cell);
+
+      boolean wasSource = before == 0;
+      boolean wasWall = before == WALL;
+      boolean isSource = after == 0;
+      boolean isWall = after == WALL;
+
+      if (wasSource == isSource && wasWall == isWall)
+      {
+         return;
+      }
+
+      if (isSource)
+      {
+         this.dist[cell] = 0;
+         this.enqueue(cell);
+      }
+      else if (wasWall)
+      {
+         /* an open cell where a wall was: it can only shorten paths */
+         this.dist[cell] = UNREACHABLE;
+         this.seedFromNeighbors(cell);
+      }
+      else
+      {
+         /* a source went away or a wall went up: everything whose distance
+            could have come through this cell is recomputed from the cells
+            around it */
+         this.raise(cell, isWall);
+      }
+
+      this.propagate();
+   }
+
+   /*
+      Next step from pos for a mover heading down the field, or pos itself
+      when no closer cell can be entered right now.  Horizontal steps are
+      preferred on ties, as with the greedy movement.
+   */
+   public synchronized Point nextStep(Point pos, EntityKind mover)
+   {
+      int here = this.distanceAt(pos);
+      Point best = pos;
+      int bestDist = here == WALL ? UNREACHABLE : here;
+
+      for (int i = 0; i < DX.length; i++)
+      {
+         int x = pos.x + DX[i];
+         int y = pos.y + DY[i];
+         if (x < 0 || x >= this.numCols || y < 0 || y >= this.numRows)
+         {
+            continue;
+         }
+
+         int d = this.dist[y * this.numCols + x];
+         if (d > 0 && d < bestDist && canEnter(this.world, x, y, mover))
+         {
+            best = this.world.pointAt(x, y);
+            bestDist = d;
+         }
+      }
+
+      return best;
+   }
+
+   /* a target entity next to pos, if there is one */
+   public synchronized Entity adjacentTarget(Point pos)
+   {
+      if (this.distanceAt(pos) != 1)
+      {
+         return null;
+      }
+
+      for (int i = 0; i < DX.length; i++)
+      {
+         int x = pos.x + DX[i];
+         int y = pos.y + DY[i];
+         if (this.world.withinBounds(x, y))
+         {
+            Entity occupant = this.world.getOccupancyCell(x, y);
+            if (occupant != null && occupant.kind == this.target)
+            {
+               return occupant;
+            }
+         }
+      }
+
+      return null;
+   }
+
+   public static boolean canEnter(WorldModel world, Point pos, EntityKind mover)
+   {
+      return canEnter(world, pos.x, pos.y, mover);
+   }
+
+   public static boolean canEnter(WorldModel world, int x, int y,
+      EntityKind mover)
+   {
+      Entity occupant = world.getOccupancyCell(x, y);
+      return occupant == null ||
+         (mover == EntityKind.CRAB && occupant.kind == EntityKind.FISH);
+   }
+
+   public static boolean isStatic(EntityKind kind)
+   {
+      switch (kind)
+      {
+         case OBSTACLE:
+         case ATLANTIS:
+         case SGRASS:
+            return true;
+         default:
+            return false;
+      }
+   }
+
+   /* 0 for a target, WALL for a static non-target, UNREACHABLE otherwise */
+   private int stateOf(int cell)
+   {
+      Entity occupant = this.world.getOccupancyCell(cell % this.numCols,
+         cell / this.numCols);
+      if (occupant == null)
+      {
+         return UNREACHABLE;
+      }
+      if (occupant.kind == this.target)
+      {
+         return 0;
+      }
+      return isStatic(occupant.kind) ? WALL : UNREACHABLE;
+   }
+
+   /*
+      Clears every cell that may have depended on cell (its distance is exactly
+      one more than a cleared neighbour's), then reseeds the cleared region
+      from its untouched border.
+   */
+   private void raise(int cell, boolean becomesWall)
+   {
+      int start = this.tail;
+      int cleared = 0;
+
+      this.push(cell);
+      while (cleared < this.count)
+      {
+         int c = this.queue[(start + cleared) % this.queue.length];
+         int d = this.dist[c];
+         cleared++;
+
+         for (int i = 0; i < DX.length; i++)
+         {
+            int n = this.neighbor(c, i);
+            if (n >= 0 && !this.queued[n] && this.dist[n] != WALL &&
+               this.dist[n] != UNREACHABLE && this.dist[n] == d + 1)
+            {
+               this.push(n);
+            }
+         }
+      }
+
+      /* reset the region, remembering it in the queue order */
+      int size = this.count;
+      for (int k = 0; k < size; k++)
+      {
+         this.dist[this.queue[(start + k) % this.queue.length]] = UNREACHABLE;
+      }
+      if (becomesWall)
+      {
+         this.dist[cell] = WALL;
+      }
+
+      for (int k = 0; k < size; k++)
+      {
+         int c = this.queue[(start + k) % this.queue.length];
+         this.queued[c] = false;
+      }
+      this.head = this.tail;
+      this.count = 0;
+
+      for (int k = 0; k < size; k++)
+      {
+         int c = this.queue[(start + k) % this.queue.length];
+         if (this.dist[c] != WALL)
+         {
+            this.seedFromNeighbors(c);
+         }
+      }
+   }
+
+   private void seedFromNeighbors(int cell)
+   {
+      int best = UNREACHABLE;
+      for (int i = 0; i < DX.length; i++)
+      {
+         int n = this.neighbor(cell, i);
+         if (n >= 0 && this.dist[n] != WALL && this.dist[n] != UNREACHABLE)
+         {
+            best = Math.min(best, this.dist[n] + 1);
+         }
+      }
+
+      if (best != UNREACHABLE)
+      {
+         this.dist[cell] = best;
+         this.enqueue(cell);
+      }
+   }
+
+   /* label-correcting relaxation from every queued cell */
+   private void propagate()
+   {
+      while (this.count > 0)
+      {
+         int c = this.queue[this.head];
+         this.head = (this.head + 1) % this.queue.length;
+         this.count--;
+         this.queued[c] = false;
+
+         int next = this.dist[c] + 1;
+         for (int i = 0; i < DX.length; i++)
+         {
+            int n = this.neighbor(c, i);
+            if (n >= 0 && this.dist[n] != WALL && this.dist[n] > next)
+            {
+               this.dist[n] = next;
+               this.enqueue(n);
+            }
+         }
+      }
+   }
+
+   private void enqueue(int cell)
+   {
+      if (!this.queued[cell])
+      {
+         this.push(cell);
+      }
+   }
+
+   private void push(int cell)
+   {
+      this.queued[cell] = true;
+      this.queue[this.tail] = cell;
+      this.tail = (this.tail + 1) % this.queue.length;
+      this.count++;
+   }
+
+   private int neighbor(int cell, int direction)
+   {
+      int x = cell % this.numCols + DX[direction];
+      int y = cell / this.numCols + DY[direction];
+      if (x < 0 || x >= this.numCols || y < 0 || y >= this.numRows)
+      {
+         return -1;
+      }
+      return y * this.numCols + x;
+   }
+}
@@ -0,0 +1,40 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+DrawViewportEvent: a Flight Recorder event for one WorldView.drawViewport.
+Disabled unless a recording turns on virtualworld.DrawViewport
+ */
+
+@Name("virtualworld.DrawViewport")
+@Label("Draw Viewport")
+@Description("One WorldView.drawViewport call")
+@Category("Virtual World")
+@Enabled(false)
+@StackTrace(false)
+final class DrawViewportEvent
+   extends jdk.jfr.Event
+{
+   /* checked before one is created, so none is allocated while off */
+   public static final EventType TYPE =
+      EventType.getEventType(DrawViewportEvent.class);
+
+   @Label("Column")
+   public int col;
+
+   @Label("Row")
+   public int row;
+
+   @Label("Repaint")
+   @Description("Whether the whole viewport was drawn")
+   public boolean repaint;
+
+   @Label("Tiles")
+   @Description("Tiles drawn")
+   public int tiles;
+}
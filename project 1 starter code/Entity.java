@@ -1,5 +1,4 @@
 import java.util.List;
-import java.util.Optional;
 
 import processing.core.PImage;
 
@@ -10,6 +9,10 @@ Entity ideally would includes functions for how all the entities in our virtual
 
 final class Entity
 {
+   /* most activity events a mover goes without searching again for a
+      target it keeps finding unreachable */
+   public static final int MAX_PATH_BACKOFF = 32;
+
    public EntityKind kind;
    public String id;
    public Point position;
@@ -20,6 +23,32 @@ final class Entity
    public int actionPeriod;
    public int animationPeriod;
 
+   /* head of the chain of events scheduled for this entity */
+   public Event pendingEvents;
+
+   /* cached A* path toward pathTarget, as it stood at pathGoal; null
+      after a search that found no route, made when the world's cell
+      changes stood at pathChanges, and not repeated for pathWait more
+      activity events, a wait that doubles up to MAX_PATH_BACKOFF with
+      each failure in a row */
+   public List<Point> path;
+   public Entity pathTarget;
+   public Point pathGoal;
+   public long pathChanges;
+   public int pathWait;
+   public int pathBackoff;
+
+   /* re-armed on every reschedule rather than allocated each time */
+   public Action activityAction;
+   public Action animationAction;
+
+   /* this entity's row in the world's EntityTable, when there is one */
+   public EntityTable table;
+   public int tableIndex;
+
+   /* this entity's actor when the scheduler runs an ActorSystem */
+   public EntityActor actor;
+
    public Entity(EntityKind kind, String id, Point position,
       List<PImage> images, int resourceLimit, int resourceCount,
       int actionPeriod, int animationPeriod)
@@ -33,65 +62,175 @@ final class Entity
       this.resourceCount = resourceCount;
       this.actionPeriod = actionPeriod;
       this.animationPeriod = animationPeriod;
+      this.tableIndex = -1;
    }
 
    public Point nextPositionOcto(WorldModel world,
                                  Point destPos)
    {
       int horiz = Integer.signum(destPos.x - this.position.x);
-      Point newPos = new Point(this.position.x + horiz,
-         this.position.y);
+      int x = this.position.x + horiz;
+      int y = this.position.y;
 
-      if (horiz == 0 || world.isOccupied(newPos))
+      if (horiz == 0 || world.isOccupied(x, y))
       {
          int vert = Integer.signum(destPos.y - this.position.y);
-         newPos = new Point(this.position.x,
-            this.position.y + vert);
+         x = this.position.x;
+         y = this.position.y + vert;
 
-         if (vert == 0 || world.isOccupied(newPos))
+         if (vert == 0 || world.isOccupied(x, y))
          {
-            newPos = this.position;
+            return this.position;
          }
       }
 
-      return newPos;
+      return world.pointAt(x, y);
    }
 
    public Point nextPositionCrab(WorldModel world,
                                  Point destPos)
    {
       int horiz = Integer.signum(destPos.x - this.position.x);
-      Point newPos = new Point(this.position.x + horiz,
-         this.position.y);
+      int x = this.position.x + horiz;
+      int y = this.position.y;
 
-      Optional<Entity> occupant = world.getOccupant(newPos);
-
-      if (horiz == 0 ||
-         (occupant.isPresent() && !(occupant.get().kind == EntityKind.FISH)))
+      if (horiz == 0 || blocksCrab(world, x, y))
       {
          int vert = Integer.signum(destPos.y - this.position.y);
-         newPos = new Point(this.position.x, this.position.y + vert);
-         occupant = world.getOccupant(newPos);
+         x = this.position.x;
+         y = this.position.y + vert;
+
+         if (vert == 0 || blocksCrab(world, x, y))
+         {
+            return this.position;
+         }
+      }
+
+      return world.pointAt(x, y);
+   }
+
+   private static boolean blocksCrab(WorldModel world, int x, int y)
+   {
+      return world.isOccupied(x, y) &&
+         world.getOccupancyCell(x, y).kind != EntityKind.FISH;
+   }
+
+   /*
+      Next step toward target using the world's pathing strategy.  Flow-field
+      and A* movement fall back to the greedy step when they find no route.
+   */
+   public Point nextPosition(WorldModel world, Entity target)
+   {
+      if (world.pathing == PathingKind.FLOW_FIELD)
+      {
+         DistanceField field = world.distanceField(target.kind);
+         if (field.distanceAt(this.position) != DistanceField.UNREACHABLE)
+         {
+            return field.nextStep(this.position, this.kind);
+         }
+      }
+      else if (world.pathing == PathingKind.A_STAR)
+      {
+         Point step = this.nextPathStep(world, target);
+         if (step != null)
+         {
+            return step;
+         }
+      }
+
+      return this.kind == EntityKind.CRAB ?
+         this.nextPositionCrab(world, target.position) :
+         this.nextPositionOcto(world, target.position);
+   }
+
+   /*
+      Takes the next step off the cached path, searching again only when the
+      target has changed or moved, or the next cell has become blocked.  A
+      target found unreachable is searched for again as soon as it moves, but
+      otherwise only once some cell of the world has changed and the backoff
+      has run out; until then the caller takes the greedy step.
+   */
+   public Point nextPathStep(WorldModel world, Entity target)
+   {
+      boolean sameGoal = this.pathTarget == target &&
+         target.position.equals(this.pathGoal);
+      if (this.path == null && sameGoal)
+      {
+         if (this.pathWait > 0)
+         {
+            this.pathWait--;
+            return null;
+         }
+         if (this.pathChanges == world.cellChanges())
+         {
+            return null;
+         }
+      }
 
-         if (vert == 0 ||
-            (occupant.isPresent() && !(occupant.get().kind == EntityKind.FISH)))
+      if (this.path == null || this.path.isEmpty() || !sameGoal ||
+         !this.position.adjacent(this.path.get(0)) ||
+         !DistanceField.canEnter(world, this.path.get(0), this.kind))
+      {
+         this.pathChanges = world.cellChanges();
+         this.path = world.pathfinder().findPath(this.position,
+            target.position, this.kind);
+         this.pathTarget = target;
+         this.pathGoal = target.position;
+
+         if (this.path != null)
+         {
+            this.pathBackoff = 0;
+         }
+         else
          {
-            newPos = this.position;
+            this.pathBackoff = sameGoal ? Math.min(
+               Math.max(this.pathBackoff * 2, 1), MAX_PATH_BACKOFF) : 1;
+            this.pathWait = this.pathBackoff;
          }
       }
 
-      return newPos;
+      if (this.path == null || this.path.isEmpty())
+      {
+         return null;
+      }
+
+      return this.path.remove(0);
    }
 
+   /*
+      The entity's own activity and animation actions are handed out again
+      once their last event has run or been cancelled; a fresh action is only
+      made while the owned one is still queued.
+   */
    public Action createActivityAction(WorldModel world,
                                       ImageStore imageStore)
    {
-      return new Action(ActionKind.ACTIVITY, this, world, imageStore, 0);
+      if (this.activityAction == null || this.activityAction.queued)
+      {
+         this.activityAction = new Action(ActionKind.ACTIVITY, this, world,
+            imageStore, 0);
+      }
+      else
+      {
+         this.activityAction.world = world;
+         this.activityAction.imageStore = imageStore;
+      }
+      return this.activityAction;
    }
 
-   public Action createAnimationAction(int repeatCount)
+   public Action createAnimationAction(WorldModel world, int repeatCount)
    {
-      return new Action(ActionKind.ANIMATION, this, null, null, repeatCount);
+      if (this.animationAction == null || this.animationAction.queued)
+      {
+         this.animationAction = new Action(ActionKind.ANIMATION, this, world,
+            null, repeatCount);
+      }
+      else
+      {
+         this.animationAction.world = world;
+         this.animationAction.repeatCount = repeatCount;
+      }
+      return this.animationAction;
    }
 
    public void tryAddEntity(WorldModel world)
@@ -111,20 +250,23 @@ final class Entity
     {
        if (this.position.adjacent(target.position))
        {
+          if (world.metrics != null)
+          {
+             world.metrics.captured();
+          }
           world.removeEntity(target);
           scheduler.unscheduleAllEvents(target);
           return true;
        }
        else
        {
-          Point nextPos = this.nextPositionCrab(world, target.position);
+          Point nextPos = this.nextPosition(world, target);
 
           if (!this.position.equals(nextPos))
           {
-             Optional<Entity> occupant = world.getOccupant(nextPos);
-             if (occupant.isPresent())
+             if (world.isOccupied(nextPos))
              {
-                scheduler.unscheduleAllEvents(occupant.get());
+                scheduler.unscheduleAllEvents(world.getOccupancyCell(nextPos));
              }
 
              moveEntity(world, nextPos);
@@ -138,16 +280,35 @@ final class Entity
       Point oldPos = this.position;
       if (world.withinBounds(pos) && !pos.equals(oldPos))
       {
-         world.setOccupancyCell(oldPos, null);
-         world.removeEntityAt(pos);
-         world.setOccupancyCell(pos, this);
-         this.position = pos;
+         long changes = world.cellChanges();
+         world.moveEntity(this, pos);
+
+         /* a step within the region the entity could already reach opens
+            no route to a target it found unreachable */
+         if (this.path == null && this.pathChanges == changes)
+         {
+            this.pathChanges = world.cellChanges();
+         }
+
+         if (this.table != null)
+         {
+            this.table.sync(this);
+         }
       }
    }
 
-   public void nextImage()
+   public void nextImage(WorldModel world)
    {
       this.imageIndex = (this.imageIndex + 1) % this.images.size();
+      if (world.withinBounds(this.position))
+      {
+         world.markDirty(this.position.x, this.position.y);
+      }
+
+      if (this.table != null)
+      {
+         this.table.sync(this);
+      }
    }
 
    public int getAnimationPeriod()
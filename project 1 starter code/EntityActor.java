@@ -0,0 +1,62 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+
+/*
+EntityActor: one entity running as its own thread under an ActorSystem. Its
+mailbox holds the actions scheduled for it; the thread sleeps on the system's
+clock until the earliest one is due, hands it to the world channel, and stops
+once the mailbox is empty
+ */
+
+final class EntityActor
+   implements Runnable
+{
+   public final Entity entity;
+   private final ActorSystem system;
+
+   /* everything below is guarded by the system lock */
+   public final List<Event> mailbox;
+   public final Condition wake;
+   public boolean started;
+   public boolean sleeping;
+   public ActorSystem.Wakeup wakeup;
+
+   public EntityActor(Entity entity, ActorSystem system, Condition wake)
+   {
+      this.entity = entity;
+      this.system = system;
+      this.mailbox = new ArrayList<>(2);
+      this.wake = wake;
+   }
+
+   public void run()
+   {
+      try
+      {
+         Event message;
+         while ((message = this.system.awaitNext(this)) != null)
+         {
+            this.system.deliver(message);
+         }
+      }
+      catch (RuntimeException e)
+      {
+         this.system.actorFailed(this, e);
+      }
+   }
+
+   /* the message due first, or null when the mailbox is empty */
+   public Event earliest()
+   {
+      Event earliest = null;
+      for (Event message : this.mailbox)
+      {
+         if (earliest == null || message.time < earliest.time)
+         {
+            earliest = message;
+         }
+      }
+      return earliest;
+   }
+}
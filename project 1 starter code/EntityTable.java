@@ -0,0 +1,129 @@
+import java.util.Arrays;
+import java.util.List;
+
+import processing.core.PImage;
+
+/*
+EntityTable: an optional struct-of-arrays copy of the world's entities. Each
+property lives in its own dense column and row i of every column describes
+handles[i], so full scans walk contiguous arrays instead of chasing Entity
+objects around the heap. Rows are deleted by moving the last row into the gap
+ */
+
+final class EntityTable
+{
+   private static final int INITIAL_CAPACITY = 64;
+
+   public int size;
+   public Entity[] handles;
+   public byte[] kinds;
+   public int[] xs;
+   public int[] ys;
+   public int[] imageIndices;
+   public int[] resourceCounts;
+   public int[] actionPeriods;
+   public int[] animationPeriods;
+   public List<PImage>[] images;
+
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   public EntityTable()
+   {
+      this.size = 0;
+      this.handles = new Entity[INITIAL_CAPACITY];
+      this.kinds = new byte[INITIAL_CAPACITY];
+      this.xs = new int[INITIAL_CAPACITY];
+      this.ys = new int[INITIAL_CAPACITY];
+      this.imageIndices = new int[INITIAL_CAPACITY];
+      this.resourceCounts = new int[INITIAL_CAPACITY];
+      this.actionPeriods = new int[INITIAL_CAPACITY];
+      this.animationPeriods = new int[INITIAL_CAPACITY];
+      this.images = new List[INITIAL_CAPACITY];
+   }
+
+   public synchronized void add(Entity entity)
+   {
+      if (this.size == this.handles.length)
+      {
+         this.grow();
+      }
+
+      int row = this.size++;
+      this.handles[row] = entity;
+      this.kinds[row] = (byte)entity.kind.ordinal();
+      this.actionPeriods[row] = entity.actionPeriod;
+      this.animationPeriods[row] = entity.animationPeriod;
+      this.images[row] = entity.images;
+      entity.table = this;
+      entity.tableIndex = row;
+      this.sync(entity);
+   }
+
+   public synchronized void remove(Entity entity)
+   {
+      int row = entity.tableIndex;
+      if (entity.table != this || row < 0 || row >= this.size ||
+         this.handles[row] != entity)
+      {
+         return;
+      }
+
+      int last = --this.size;
+      if (row != last)
+      {
+         Entity moved = this.handles[last];
+         this.handles[row] = moved;
+         this.kinds[row] = this.kinds[last];
+         this.xs[row] = this.xs[last];
+         this.ys[row] = this.ys[last];
+         this.imageIndices[row] = this.imageIndices[last];
+         this.resourceCounts[row] = this.resourceCounts[last];
+         this.actionPeriods[row] = this.actionPeriods[last];
+         this.animationPeriods[row] = this.animationPeriods[last];
+         this.images[row] = this.images[last];
+         moved.tableIndex = row;
+      }
+
+      this.handles[last] = null;
+      this.images[last] = null;
+      entity.table = null;
+      entity.tableIndex = -1;
+   }
+
+   public synchronized int countOf(EntityKind kind)
+   {
+      byte ordinal = (byte)kind.ordinal();
+      int count = 0;
+      for (int row = 0; row < this.size; row++)
+      {
+         if (this.kinds[row] == ordinal)
+         {
+            count++;
+         }
+      }
+      return count;
+   }
+
+   /* copies the properties that change during the simulation back in */
+   public synchronized void sync(Entity entity)
+   {
+      int row = entity.tableIndex;
+      this.xs[row] = entity.position.x;
+      this.ys[row] = entity.position.y;
+      this.imageIndices[row] = entity.imageIndex;
+      this.resourceCounts[row] = entity.resourceCount;
+   }
+
+   private void grow()
+   {
+      int capacity = this.handles.length * 2;
+      this.handles = Arrays.copyOf(this.handles, capacity);
+      this.kinds = Arrays.copyOf(this.kinds, capacity);
+      this.xs = Arrays.copyOf(this.xs, capacity);
+      this.ys = Arrays.copyOf(this.ys, capacity);
+      this.imageIndices = Arrays.copyOf(this.imageIndices, capacity);
+      this.resourceCounts = Arrays.copyOf(this.resourceCounts, capacity);
+      this.actionPeriods = Arrays.copyOf(this.actionPeriods, capacity);
+      this.animationPeriods = Arrays.copyOf(this.animationPeriods, capacity);
+      this.images = Arrays.copyOf(this.images, capacity);
+   }
+}
@@ -4,10 +4,27 @@ final class Event
    public long time;
    public Entity entity;
 
+   /* heap index or wheel slot of this event in its EventQueue,
+      -1 when not queued */
+   public int queueIndex;
+
+   /* links in a TimingWheelEventQueue slot */
+   public Event nextQueued;
+   public Event prevQueued;
+
+   /* links in the owning entity's chain of pending events */
+   public Event nextPending;
+   public Event prevPending;
+
+   /* set when the entity is unscheduled after this event has already been
+      taken off the queue for a parallel batch */
+   public boolean cancelled;
+
    public Event(Action action, long time, Entity entity)
    {
       this.action = action;
       this.time = time;
       this.entity = entity;
+      this.queueIndex = -1;
    }
 }
@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+EventJournal: an append-only record of every event an EventScheduler runs,
+enough for EventReplay to run the same simulation again. Records are packed
+into a few reusable buffers; a full buffer is handed to a background thread
+that writes it to the file channel, so the simulation thread only copies
+bytes. Layout, big-endian:
+
+   int magic, int version
+   short length, UTF-8 start file (a save, snapshot or checkpoint)
+   long start time (clock when the journal was attached), int numRows,
+   int numCols, double timeScale, byte PathingKind ordinal, byte timing wheel, byte entity table
+   then per event:
+      long now (clock when run), long time (when due), int entity cell
+      (Point.pack), byte ActionKind ordinal, short draws, draws ints from
+      Functions.rand
+
+An entity is named by the cell it occupies when its event runs, which no
+other entity can share, so replay does not depend on the order the queue
+keeps events due at the same time. The journal follows one thread, so it
+cannot be used with a parallel tick or actors, and replay needs a clock that
+stands still while an event runs, as HeadlessWorld's VirtualClock does
+ */
+
+final class EventJournal
+{
+   public static final String EXTENSION = ".wjnl";
+   public static final int MAGIC = 0x574a4e31;  // "WJN1"
+   public static final int VERSION = 2;
+
+   public static final int RECORD_HEADER_SIZE = 23;
+   public static final int MAX_DRAWS = 1024;
+
+   private static final int BUFFER_SIZE = 1 << 16;
+   private static final int BUFFER_COUNT = 3;
+
+   private final FileChannel channel;
+   private final ExecutorService writer;
+   private final BlockingQueue<ByteBuffer> free;
+   private ByteBuffer current;
+   private volatile IOException failure;
+
+   /* the event being run */
+   private boolean running;
+   private long now;
+   private long time;
+   private int cell;
+   private byte kind;
+   private final int[] draws;
+   private int drawCount;
+
+   public long records;
+
+   /*
+      Starts journaling every event scheduler runs to file, and routes
+      Functions.rand through the journal.  start names the world the run
+      began from.
+   */
+   public static EventJournal attach(EventScheduler scheduler, Path file,
+      String start) throws IOException
+   {
+      if (scheduler.parallel != null || scheduler.actors != null)
+      {
+         throw new IllegalStateException(
+            "the journal needs a single-threaded scheduler");
+      }
+
+      EventJournal journal = new EventJournal(file, start,
+         scheduler.clock.currentTime());
+      scheduler.journal = journal;
+      Functions.rand = new JournaledRandom(Functions.rand, journal);
+      return journal;
+   }
+
+   public EventJournal(Path file, String start, long startTime)
+      throws IOException
+   {
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+      this.writer = Executors.newSingleThreadExecutor(task -> {
+         Thread thread = new Thread(task, "journal-writer");
+         thread.setDaemon(true);
+         return thread;
+      });
+      this.free = new ArrayBlockingQueue<>(BUFFER_COUNT);
+      for (int i = 1; i < BUFFER_COUNT; i++)
+      {
+         this.free.add(ByteBuffer.allocate(BUFFER_SIZE));
+      }
+      this.current = ByteBuffer.allocate(BUFFER_SIZE);
+      this.draws = new int[MAX_DRAWS];
+
+      byte[] startBytes = start.getBytes(StandardCharsets.UTF_8);
+      this.current.putInt(MAGIC);
+      this.current.putInt(VERSION);
+      this.current.putShort((short)startBytes.length);
+      this.current.put(startBytes);
+      this.current.putLong(startTime);
+      this.current.putInt(VirtualWorld.worldRows);
+      this.current.putInt(VirtualWorld.worldCols);
+      this.current.putDouble(VirtualWorld.timeScale);
+      this.current.put((byte)VirtualWorld.pathing.ordinal());
+      this.current.put((byte)(VirtualWorld.useTimingWheel ? 1 : 0));
+      this.current.put((byte)(VirtualWorld.useEntityTable ? 1 : 0));
+   }
+
+   /* event is about to run at clock time now */
+   public void beginEvent(Event event, long now)
+   {
+      this.running = true;
+      this.now = now;
+      this.time = event.time;
+      this.cell = Point.pack(event.entity.position.x,
+         event.entity.position.y);
+      this.kind = (byte)event.action.kind.ordinal();
+      this.drawCount = 0;
+   }
+
+   /* a value handed out by Functions.rand */
+   public void draw(int value)
+   {
+      if (!this.running)
+      {
+         return;
+      }
+      if (this.drawCount == MAX_DRAWS)
+      {
+         throw new IllegalStateException(String.format(
+            "more than %d random draws in one event", MAX_DRAWS));
+      }
+      this.draws[this.drawCount++] = value;
+   }
+
+   public void endEvent()
+   {
+      this.running = false;
+      if (this.current.remaining() <
+         RECORD_HEADER_SIZE + 4 * this.drawCount)
+      {
+         this.flush();
+      }
+
+      this.current.putLong(this.now);
+      this.current.putLong(this.time);
+      this.current.putInt(this.cell);
+      this.current.put(this.kind);
+      this.current.putShort((short)this.drawCount);
+      for (int i = 0; i < this.drawCount; i++)
+      {
+         this.current.putInt(this.draws[i]);
+      }
+      this.records++;
+   }
+
+   /* writes what is left, waits for the writer and closes the file */
+   public void close()
+   {
+      this.flush();
+      this.writer.shutdown();
+      try
+      {
+         this.writer.awaitTermination(1, TimeUnit.MINUTES);
+         this.channel.close();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      catch (IOException e)
+      {
+         this.failure = e;
+      }
+
+      if (this.failure != null)
+      {
+         System.err.println(String.format("journal: %s",
+            this.failure.getMessage()));
+      }
+   }
+
+   /* hands the current buffer to the writer and takes an empty one */
+   private void flush()
+   {
+      ByteBuffer full = this.current;
+      full.flip();
+      this.writer.execute(() -> {
+         try
+         {
+            while (full.hasRemaining())
+            {
+               this.channel.write(full);
+            }
+         }
+         catch (IOException e)
+         {
+            this.failure = e;
+         }
+         full.clear();
+         this.free.add(full);
+      });
+
+      try
+      {
+         this.current = this.free.take();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         this.current = ByteBuffer.allocate(BUFFER_SIZE);
+      }
+   }
+}
@@ -0,0 +1,20 @@
+/*
+EventQueue: the pending events of an EventScheduler, ordered by time
+ */
+
+interface EventQueue
+{
+   boolean isEmpty();
+
+   int size();
+
+   /* earliest pending event, or null when empty */
+   Event peek();
+
+   void add(Event event);
+
+   boolean remove(Event event);
+
+   /* removes and returns an event due strictly before time, or null */
+   Event pollBefore(long time);
+}
@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/*
+EventReplay: runs a simulation again from an EventJournal. The world is
+rebuilt from the journal's start file with the recorded settings, and each
+journaled event is found through the entity on its cell and run in turn on a
+VirtualClock set to when it first ran, with Functions.rand handing back the
+journaled draws. An event missing from the simulation is reported, so the
+first place a changed build behaves differently shows up. Wall time is
+printed per window of world time, to find where a run slows down
+
+   java EventReplay [-window N] [-until N] journal
+ */
+
+final class EventReplay
+{
+   public static final String WINDOW_FLAG = "-window";
+   public static final String UNTIL_FLAG = "-until";
+   public static final long DEFAULT_WINDOW_SECONDS = 60;
+
+   private final ByteBuffer in;
+   private final ReplayRandom random;
+   public long records;
+
+   public final String start;
+   public final long startTime;
+   public final ImageStore imageStore;
+   public final WorldModel world;
+   public final VirtualClock clock;
+   public final EventScheduler scheduler;
+
+   public static void main(String[] args) throws IOException
+   {
+      String filename = null;
+      long window = DEFAULT_WINDOW_SECONDS;
+      long until = Long.MAX_VALUE / 1000;
+      for (int i = 0; i < args.length; i++)
+      {
+         if (args[i].equals(WINDOW_FLAG) && i + 1 < args.length)
+         {
+            window = Long.parseLong(args[++i]);
+         }
+         else if (args[i].equals(UNTIL_FLAG) && i + 1 < args.length)
+         {
+            until = Long.parseLong(args[++i]);
+         }
+         else
+         {
+            filename = args[i];
+         }
+      }
+      if (filename == null)
+      {
+         System.err.println("usage: java EventReplay [-window N] [-until N] "
+            + "<journal" + EventJournal.EXTENSION + ">");
+         return;
+      }
+
+      EventReplay replay = new EventReplay(Paths.get(filename));
+      System.out.println(String.format("%10s %10s %10s %12s", "world s",
+         "events", "wall ms", "events/sec"));
+
+      long total = 0;
+      long start = System.nanoTime();
+      for (long from = 0; from < until && replay.hasNext(); from += window)
+      {
+         long windowStart = System.nanoTime();
+         long events = replay.runUntil(replay.startTime +
+            Math.min(from + window, until) * 1000);
+         long wallNanos = System.nanoTime() - windowStart;
+         total += events;
+         System.out.println(String.format("%10d %10d %10.1f %12.0f",
+            from, events, wallNanos / 1e6, events * 1e9 /
+            Math.max(wallNanos, 1)));
+      }
+      long wallMillis = (System.nanoTime() - start) / 1000000;
+
+      System.out.println(String.format("replayed %d events in %d ms, "
+         + "%d entities", total, wallMillis, replay.world.entities.size()));
+   }
+
+   /* sets up the journal's starting world, ready to replay */
+   public EventReplay(Path journal) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(journal,
+         StandardOpenOption.READ))
+      {
+         this.in = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+            channel.size());
+      }
+
+      if (this.in.remaining() < 8 || this.in.getInt() != EventJournal.MAGIC)
+      {
+         throw new IOException(String.format("%s is not a journal", journal));
+      }
+      int version = this.in.getInt();
+      if (version != EventJournal.VERSION)
+      {
+         throw new IOException(String.format(
+            "unsupported journal version %d", version));
+      }
+      this.start = WorldSnapshot.readString(this.in);
+      this.startTime = this.in.getLong();
+      VirtualWorld.worldRows = this.in.getInt();
+      VirtualWorld.worldCols = this.in.getInt();
+      VirtualWorld.timeScale = this.in.getDouble();
+      VirtualWorld.pathing = PathingKind.values()[this.in.get()];
+      VirtualWorld.useTimingWheel = this.in.get() != 0;
+      VirtualWorld.useEntityTable = this.in.get() != 0;
+
+      this.imageStore = new ImageStore(
+         new PImage(VirtualWorld.TILE_WIDTH, VirtualWorld.TILE_HEIGHT,
+            PApplet.RGB));
+      this.world = new WorldModel(VirtualWorld.worldRows,
+         VirtualWorld.worldCols,
+         VirtualWorld.createDefaultBackground(this.imageStore));
+      this.world.pathing = VirtualWorld.pathing;
+      this.clock = new VirtualClock(this.startTime);
+      this.scheduler = new EventScheduler(VirtualWorld.timeScale,
+         VirtualWorld.createEventQueue(this.startTime), this.clock);
+
+      boolean resume = this.start.endsWith(Checkpoint.EXTENSION);
+      if (!resume)
+      {
+         VirtualWorld.loadWorld(this.world, this.start, this.imageStore);
+      }
+      if (VirtualWorld.useEntityTable)
+      {
+         this.world.enableEntityTable();
+      }
+      if (resume)
+      {
+         Checkpoint.restore(Paths.get(this.start), this.world, this.scheduler,
+            this.imageStore);
+      }
+      else
+      {
+         VirtualWorld.scheduleActions(this.world, this.scheduler,
+            this.imageStore);
+      }
+
+      this.random = new ReplayRandom();
+      Functions.rand = this.random;
+   }
+
+   public boolean hasNext()
+   {
+      return this.in.hasRemaining();
+   }
+
+   /*
+      Replays the journaled events that ran before clock time end and
+      returns how many there were.  Throws IllegalStateException where the
+      simulation no longer matches the journal.
+   */
+   public long runUntil(long end)
+   {
+      long events = 0;
+      while (this.in.hasRemaining() && this.in.getLong(this.in.position()) <
+         end)
+      {
+         long now = this.in.getLong();
+         long time = this.in.getLong();
+         int cell = this.in.getInt();
+         ActionKind kind = ActionKind.values()[this.in.get()];
+         this.random.load(this.in, this.in.getShort() & 0xffff);
+
+         this.clock.advanceTo(now);
+         Event event = this.find(cell, kind, time);
+         if (event == null)
+         {
+            throw new IllegalStateException(String.format(
+               "replay diverged at event %d: no %s pending at (%d, %d) for "
+               + "time %d", this.records, kind, Point.unpackX(cell),
+               Point.unpackY(cell), time));
+         }
+
+         this.scheduler.eventQueue.remove(event);
+         this.scheduler.runEvent(event);
+         if (this.random.remaining() != 0)
+         {
+            throw new IllegalStateException(String.format(
+               "replay diverged at event %d: %d journaled draws unused",
+               this.records, this.random.remaining()));
+         }
+         this.records++;
+         events++;
+      }
+      this.clock.advanceTo(end);
+      return events;
+   }
+
+   /* the pending event of the entity on cell that matches kind and time */
+   private Event find(int cell, ActionKind kind, long time)
+   {
+      Entity entity = this.world.getOccupancyCell(Point.unpackX(cell),
+         Point.unpackY(cell));
+      if (entity == null)
+      {
+         return null;
+      }
+
+      for (Event event = entity.pendingEvents; event != null;
+         event = event.nextPending)
+      {
+         if (event.time == time && event.action.kind == kind)
+         {
+            return event;
+         }
+      }
+      return null;
+   }
+
+   /* hands out the draws journaled for the event being replayed */
+   static final class ReplayRandom
+      extends Random
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final int[] draws = new int[EventJournal.MAX_DRAWS];
+      private int count;
+      private int next;
+
+      public void load(ByteBuffer in, int count)
+      {
+         for (int i = 0; i < count; i++)
+         {
+            this.draws[i] = in.getInt();
+         }
+         this.count = count;
+         this.next = 0;
+      }
+
+      public int remaining()
+      {
+         return this.count - this.next;
+      }
+
+      protected int next(int bits)
+      {
+         if (this.next == this.count)
+         {
+            throw new IllegalStateException(
+               "replay diverged: more random draws than journaled");
+         }
+         return this.draws[this.next++];
+      }
+   }
+}
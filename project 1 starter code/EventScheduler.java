@@ -6,53 +6,158 @@ EventScheduler: ideally our way of controlling what happens in our virtual world
 
 final class EventScheduler
 {
-   public PriorityQueue<Event> eventQueue;
-   public Map<Entity, List<Event>> pendingEvents;
+   public EventQueue eventQueue;
    public double timeScale;
+   public Clock clock;
+
+   /* executed and cancelled events, chained through nextPending */
+   private Event freeEvents;
+
+   /* runs updateOnTime across threads when set */
+   public ParallelTickExecutor parallel;
+
+   /* when set, events go to per-entity actors instead of the event queue */
+   public ActorSystem actors;
+
+   /* when set, records every event run */
+   public EventJournal journal;
+
+   /* when set, counts events run and unscheduled */
+   public SimulationMetrics metrics;
 
    public EventScheduler(double timeScale)
    {
-      this.eventQueue = new PriorityQueue<>(new EventComparator());
-      this.pendingEvents = new HashMap<>();
+      this(timeScale, new HeapEventQueue(new EventComparator()),
+         new WallClock());
+   }
+
+   public EventScheduler(double timeScale, EventQueue eventQueue, Clock clock)
+   {
+      this.eventQueue = eventQueue;
       this.timeScale = timeScale;
+      this.clock = clock;
    }
 
-   public void removePendingEvent(Event event)
+   public synchronized void removePendingEvent(Event event)
    {
-      List<Event> pending = this.pendingEvents.get(event.entity);
+      Entity entity = event.entity;
 
-      if (pending != null)
+      if (event.prevPending != null)
+      {
+         event.prevPending.nextPending = event.nextPending;
+      }
+      else if (entity.pendingEvents == event)
       {
-         pending.remove(event);
+         entity.pendingEvents = event.nextPending;
       }
+
+      if (event.nextPending != null)
+      {
+         event.nextPending.prevPending = event.prevPending;
+      }
+
+      event.nextPending = null;
+      event.prevPending = null;
    }
 
-   public void unscheduleAllEvents(Entity entity)
+   public synchronized void unscheduleAllEvents(Entity entity)
    {
-      List<Event> pending = this.pendingEvents.remove(entity);
+      if (this.actors != null)
+      {
+         int unscheduled = this.actors.unschedule(entity);
+         if (this.metrics != null)
+         {
+            this.metrics.unscheduled(unscheduled);
+         }
+         return;
+      }
+
+      Event event = entity.pendingEvents;
+      entity.pendingEvents = null;
 
-      if (pending != null)
+      int unscheduled = 0;
+      while (event != null)
       {
-         for (Event event : pending)
+         Event next = event.nextPending;
+         unscheduled++;
+         event.action.queued = false;
+         event.prevPending = null;
+
+         if (this.eventQueue.remove(event))
+         {
+            this.recycleEvent(event);
+         }
+         else
          {
-            this.eventQueue.remove(event);
+            /* already drained into a parallel batch, which recycles it */
+            event.nextPending = null;
+            event.cancelled = true;
          }
+         event = next;
+      }
+
+      if (this.metrics != null)
+      {
+         this.metrics.unscheduled(unscheduled);
       }
    }
 
-   public void scheduleEvent(Entity entity, Action action, long afterPeriod)
+   public synchronized void scheduleEvent(Entity entity, Action action,
+      long afterPeriod)
+    {
+       this.scheduleEventAt(entity, action, this.clock.currentTime() +
+          (long)(afterPeriod * this.timeScale));
+    }
+
+   /* schedules action at a clock time rather than after a period */
+   public synchronized void scheduleEventAt(Entity entity, Action action,
+      long time)
     {
-       long time = System.currentTimeMillis() +
-          (long)(afterPeriod * this.timeScale);
-       Event event = new Event(action, time, entity);
+       if (this.actors != null)
+       {
+          action.queued = true;
+          this.actors.post(entity, action, time);
+          return;
+       }
+
+       Event event = this.obtainEvent(action, time, entity);
+       action.queued = true;
 
        this.eventQueue.add(event);
 
-       // update list of pending events for the given entity
-       List<Event> pending = this.pendingEvents.getOrDefault(entity,
-          new LinkedList<>());
-       pending.add(event);
-       this.pendingEvents.put(entity, pending);
+       // link into the chain of pending events for the given entity
+       event.nextPending = entity.pendingEvents;
+       if (entity.pendingEvents != null)
+       {
+          entity.pendingEvents.prevPending = event;
+       }
+       entity.pendingEvents = event;
+    }
+
+    private Event obtainEvent(Action action, long time, Entity entity)
+    {
+       Event event = this.freeEvents;
+       if (event == null)
+       {
+          return new Event(action, time, entity);
+       }
+
+       this.freeEvents = event.nextPending;
+       event.nextPending = null;
+       event.action = action;
+       event.time = time;
+       event.entity = entity;
+       return event;
+    }
+
+    /* only for events no longer in the queue or an entity's chain */
+    public synchronized void recycleEvent(Event event)
+    {
+       event.cancelled = false;
+       event.action = null;
+       event.entity = null;
+       event.nextPending = this.freeEvents;
+       this.freeEvents = event;
     }
 
     public void scheduleActions(Entity entity,
@@ -64,7 +169,8 @@ final class EventScheduler
          this.scheduleEvent(entity,
             entity.createActivityAction(world, imageStore),
             entity.actionPeriod);
-         this.scheduleEvent(entity, entity.createAnimationAction(0),
+         this.scheduleEvent(entity,
+            entity.createAnimationAction(world, 0),
             entity.getAnimationPeriod());
          break;
 
@@ -73,7 +179,8 @@ final class EventScheduler
             entity.createActivityAction(world, imageStore),
             entity.actionPeriod);
          this.scheduleEvent(entity,
-            entity.createAnimationAction(0), entity.getAnimationPeriod());
+            entity.createAnimationAction(world, 0),
+            entity.getAnimationPeriod());
          break;
 
       case FISH:
@@ -87,7 +194,8 @@ final class EventScheduler
             entity.createActivityAction(world, imageStore),
             entity.actionPeriod);
          this.scheduleEvent(entity,
-            entity.createAnimationAction(0), entity.getAnimationPeriod());
+            entity.createAnimationAction(world, 0),
+            entity.getAnimationPeriod());
          break;
 
       case QUAKE:
@@ -95,7 +203,7 @@ final class EventScheduler
             entity.createActivityAction(world, imageStore),
             entity.actionPeriod);
          this.scheduleEvent(entity,
-            entity.createAnimationAction(Functions.QUAKE_ANIMATION_REPEAT_COUNT),
+            entity.createAnimationAction(world, Functions.QUAKE_ANIMATION_REPEAT_COUNT),
             entity.getAnimationPeriod());
          break;
 
@@ -106,7 +214,7 @@ final class EventScheduler
          break;
       case ATLANTIS:
          this.scheduleEvent(entity,
-                    entity.createAnimationAction(Functions.ATLANTIS_ANIMATION_REPEAT_COUNT),
+                    entity.createAnimationAction(world, Functions.ATLANTIS_ANIMATION_REPEAT_COUNT),
                     entity.getAnimationPeriod());
             break;
 
@@ -117,12 +225,14 @@ final class EventScheduler
    public void executeSgrassActivity(Entity entity, WorldModel world,
                                      ImageStore imageStore)
    {
-      Optional<Point> openPt = world.findOpenAround(entity.position);
+      int openPt = world.findOpenAroundPacked(entity.position.x,
+         entity.position.y);
 
-      if (openPt.isPresent())
+      if (openPt != Point.NONE)
       {
          Entity fish = Functions.createFish(Functions.FISH_ID_PREFIX + entity.id,
-                 openPt.get(), Functions.FISH_CORRUPT_MIN +
+                 world.pointAt(Point.unpackX(openPt), Point.unpackY(openPt)),
+                 Functions.FISH_CORRUPT_MIN +
                          Functions.rand.nextInt(Functions.FISH_CORRUPT_MAX - Functions.FISH_CORRUPT_MIN),
                  imageStore.getImageList(Functions.FISH_KEY));
          world.addEntity(fish);
@@ -151,7 +261,7 @@ final class EventScheduler
    public void executeCrabActivity(Entity entity, WorldModel world,
                                    ImageStore imageStore)
    {
-      Optional<Entity> crabTarget = world.findNearest(
+      Optional<Entity> crabTarget = world.findTarget(
               entity.position, EntityKind.SGRASS);
       long nextPeriod = entity.actionPeriod;
 
@@ -196,7 +306,7 @@ final class EventScheduler
    public void executeOctoNotFullActivity(Entity entity,
                                           WorldModel world, ImageStore imageStore)
    {
-      Optional<Entity> notFullTarget = world.findNearest(entity.position,
+      Optional<Entity> notFullTarget = world.findTarget(entity.position,
          EntityKind.FISH);
 
       if (!notFullTarget.isPresent() ||
@@ -212,7 +322,7 @@ final class EventScheduler
    public void executeOctoFullActivity(Entity entity, WorldModel world,
                                        ImageStore imageStore)
    {
-      Optional<Entity> fullTarget = world.findNearest(entity.position,
+      Optional<Entity> fullTarget = world.findTarget(entity.position,
          EntityKind.ATLANTIS);
 
       if (fullTarget.isPresent() &&
@@ -232,16 +342,87 @@ final class EventScheduler
       }
    }
 
-   public void updateOnTime(long time)
+   public int updateOnTime(long time)
     {
-       while (!this.eventQueue.isEmpty() &&
-          this.eventQueue.peek().time < time)
+       if (!SchedulerTickEvent.TYPE.isEnabled())
        {
-          Event next = this.eventQueue.poll();
+          return this.runDue(time);
+       }
 
-          this.removePendingEvent(next);
+       SchedulerTickEvent tick = new SchedulerTickEvent();
+       tick.begin();
+       int executed = this.runDue(time);
+       tick.end();
+       if (tick.shouldCommit())
+       {
+          tick.time = time;
+          tick.events = executed;
+          tick.commit();
+       }
+       return executed;
+    }
 
+    /* updateOnTime without the flight recorder event */
+    private int runDue(long time)
+    {
+       if (this.parallel != null)
+       {
+          return this.parallel.updateOnTime(time);
+       }
+       if (this.actors != null)
+       {
+          return (int)this.actors.runUntil(time);
+       }
+
+       int executed = 0;
+       Event next;
+       while ((next = this.eventQueue.pollBefore(time)) != null)
+       {
+          if (this.runEvent(next))
+          {
+             executed++;
+          }
+       }
+       return executed;
+    }
+
+    /* next due event, taken off the queue but still pending for its entity */
+    public synchronized Event pollBefore(long time)
+    {
+       return this.eventQueue.pollBefore(time);
+    }
+
+    /*
+       Executes an event already taken off the queue and recycles it.  Returns
+       false if the event had been cancelled in the meantime.
+    */
+    public boolean runEvent(Event next)
+    {
+       if (next.cancelled)
+       {
+          this.recycleEvent(next);
+          return false;
+       }
+
+       this.removePendingEvent(next);
+       if (this.metrics != null)
+       {
+          this.metrics.eventExecuted(next, this.clock.currentTime());
+       }
+
+       next.action.queued = false;
+       if (this.journal != null)
+       {
+          this.journal.beginEvent(next, this.clock.currentTime());
           next.action.executeAction(this);
+          this.journal.endEvent();
        }
+       else
+       {
+          next.action.executeAction(this);
+       }
+
+       this.recycleEvent(next);
+       return true;
     }
 }
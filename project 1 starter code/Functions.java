@@ -1,6 +1,4 @@
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 
@@ -13,7 +11,8 @@ Functions - everything our virtual world is doing right now - is this a good des
 
 final class Functions
 {
-   public static final Random rand = new Random();
+   /* replaced when a Checkpoint is restored */
+   public static Random rand = new Random();
 
    public static final String OCTO_KEY = "octo";
    public static final int OCTO_NUM_PROPERTIES = 7;
@@ -78,9 +77,9 @@ final class Functions
 
    public static final int COLOR_MASK = 0xffffff;
    public static final int KEYED_IMAGE_MIN = 5;
-   private static final int KEYED_RED_IDX = 2;
-   private static final int KEYED_GREEN_IDX = 3;
-   private static final int KEYED_BLUE_IDX = 4;
+   public static final int KEYED_RED_IDX = 2;
+   public static final int KEYED_GREEN_IDX = 3;
+   public static final int KEYED_BLUE_IDX = 4;
 
    public static final int PROPERTY_KEY = 0;
 
@@ -103,58 +102,26 @@ final class Functions
       }
    }
 
-   public static void processImageLine(Map<String, List<PImage>> images,
-      String line, PApplet screen)
-   {
-      String[] attrs = line.split("\\s");
-      if (attrs.length >= 2)
-      {
-         String key = attrs[0];
-         PImage img = screen.loadImage(attrs[1]);
-         if (img != null && img.width != -1)
-         {
-            List<PImage> imgs = getImages(images, key);
-            imgs.add(img);
-
-            if (attrs.length >= KEYED_IMAGE_MIN)
-            {
-               int r = Integer.parseInt(attrs[KEYED_RED_IDX]);
-               int g = Integer.parseInt(attrs[KEYED_GREEN_IDX]);
-               int b = Integer.parseInt(attrs[KEYED_BLUE_IDX]);
-               setAlpha(img, screen.color(r, g, b), 0);
-            }
-         }
-      }
-   }
-
-   public static List<PImage> getImages(Map<String, List<PImage>> images,
-      String key)
-   {
-      List<PImage> imgs = images.get(key);
-      if (imgs == null)
-      {
-         imgs = new LinkedList<>();
-         images.put(key, imgs);
-      }
-      return imgs;
-   }
-
    /*
      Called with color for which alpha should be set and alpha value.
      setAlpha(img, color(255, 255, 255), 0));
    */
    public static void setAlpha(PImage img, int maskColor, int alpha)
    {
-      int alphaValue = alpha << 24;
       int nonAlpha = maskColor & COLOR_MASK;
+      int keyed = (alpha << 24) | nonAlpha;
       img.format = PApplet.ARGB;
       img.loadPixels();
-      for (int i = 0; i < img.pixels.length; i++)
+
+      /* branch-free so the JIT can vectorize it: keep is all ones unless
+         the pixel's colour matches, in which case keyed is selected */
+      int[] pixels = img.pixels;
+      for (int i = 0; i < pixels.length; i++)
       {
-         if ((img.pixels[i] & COLOR_MASK) == nonAlpha)
-         {
-            img.pixels[i] = alphaValue | nonAlpha;
-         }
+         int pixel = pixels[i];
+         int diff = (pixel & COLOR_MASK) ^ nonAlpha;
+         int keep = (diff | -diff) >> 31;
+         pixels[i] = (pixel & keep) | (keyed & ~keep);
       }
       img.updatePixels();
    }
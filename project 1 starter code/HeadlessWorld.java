@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/*
+HeadlessWorld runs the WorldModel and EventScheduler from a save file without a
+PApplet. Time comes from a VirtualClock that jumps to each pending event, so
+hours of world time can be simulated in seconds. With -actors every entity
+runs as an actor in an ActorSystem instead of through the event queue
+
+   java HeadlessWorld [-wheel] [-flow|-astar] [-soa] [-parallel|-actors]
+      [-size COLSxROWS] [-seconds N] [-checkpoint file [-every N]] [-journal file]
+      [world file]
+
+-checkpoint writes a Checkpoint at the end of the run, and every N seconds of
+world time with -every. A world file ending in Checkpoint.EXTENSION resumes
+from that checkpoint instead of starting from a save. -journal records every
+event run to an EventJournal that EventReplay can play back. While it runs,
+SimulationMetrics can be watched over JMX, and the flight recorder events
+turned on by virtualworld.jfc show ticks, slow actions and loads
+ */
+
+public final class HeadlessWorld
+{
+   public static final String SECONDS_FLAG = "-seconds";
+   public static final String ACTORS_FLAG = "-actors";
+   public static final String CHECKPOINT_FLAG = "-checkpoint";
+   public static final String EVERY_FLAG = "-every";
+   public static final String JOURNAL_FLAG = "-journal";
+   public static final long DEFAULT_SECONDS = 60 * 60;
+
+   public static void main(String[] args)
+   {
+      String filename = VirtualWorld.LOAD_FILE_NAME;
+      long seconds = DEFAULT_SECONDS;
+      boolean useActors = false;
+      Path checkpointFile = null;
+      long everySeconds = 0;
+      Path journalFile = null;
+
+      VirtualWorld.parseCommandLine(args);
+      for (int i = 0; i < args.length; i++)
+      {
+         if (args[i].equals(SECONDS_FLAG) && i + 1 < args.length)
+         {
+            seconds = Long.parseLong(args[++i]);
+         }
+         else if (args[i].equals(ACTORS_FLAG))
+         {
+            useActors = true;
+         }
+         else if (args[i].equals(CHECKPOINT_FLAG) && i + 1 < args.length)
+         {
+            checkpointFile = Paths.get(args[++i]);
+         }
+         else if (args[i].equals(EVERY_FLAG) && i + 1 < args.length)
+         {
+            everySeconds = Long.parseLong(args[++i]);
+         }
+         else if (args[i].equals(JOURNAL_FLAG) && i + 1 < args.length)
+         {
+            journalFile = Paths.get(args[++i]);
+         }
+         else if (args[i].equals(VirtualWorld.SIZE_FLAG))
+         {
+            i++;
+         }
+         else if (!args[i].startsWith("-"))
+         {
+            filename = args[i];
+         }
+      }
+
+      ImageStore imageStore = new ImageStore(
+         new PImage(VirtualWorld.TILE_WIDTH, VirtualWorld.TILE_HEIGHT,
+            PApplet.RGB));
+      WorldModel world = new WorldModel(VirtualWorld.worldRows,
+         VirtualWorld.worldCols,
+         VirtualWorld.createDefaultBackground(imageStore));
+      world.pathing = VirtualWorld.pathing;
+      VirtualClock clock = new VirtualClock(0);
+      EventScheduler scheduler = new EventScheduler(VirtualWorld.timeScale,
+         VirtualWorld.createEventQueue(clock.currentTime()), clock);
+      SimulationMetrics.attach(world, scheduler);
+
+      boolean resume = filename.endsWith(Checkpoint.EXTENSION);
+      if (!resume)
+      {
+         VirtualWorld.loadWorld(world, filename, imageStore);
+      }
+      if (VirtualWorld.useEntityTable)
+      {
+         world.enableEntityTable();
+      }
+      if (useActors)
+      {
+         scheduler.actors = new ActorSystem(scheduler, clock.currentTime());
+         scheduler.clock = scheduler.actors;
+      }
+      else if (VirtualWorld.useParallelTick)
+      {
+         scheduler.parallel = new ParallelTickExecutor(scheduler, world,
+            ForkJoinPool.commonPool());
+      }
+      if (resume)
+      {
+         long restoreStart = System.currentTimeMillis();
+         try
+         {
+            int skipped = Checkpoint.restore(Paths.get(filename), world,
+               scheduler, imageStore);
+            if (skipped > 0)
+            {
+               System.err.println(String.format(
+                  "%d entities in %s could not be placed", skipped,
+                  filename));
+            }
+         }
+         catch (IOException e)
+         {
+            System.err.println(e.getMessage());
+            return;
+         }
+         System.out.println(String.format("restored in:  %d ms",
+            System.currentTimeMillis() - restoreStart));
+      }
+      else
+      {
+         VirtualWorld.scheduleActions(world, scheduler, imageStore);
+      }
+
+      EventJournal journal = null;
+      if (journalFile != null)
+      {
+         try
+         {
+            journal = EventJournal.attach(scheduler, journalFile, filename);
+         }
+         catch (IOException | IllegalStateException e)
+         {
+            System.err.println(String.format("journal: %s", e.getMessage()));
+         }
+      }
+
+      CheckpointWriter writer = checkpointFile != null ?
+         new CheckpointWriter() : null;
+      long interval = everySeconds > 0 && writer != null ?
+         everySeconds * 1000 : seconds * 1000;
+
+      long start = System.currentTimeMillis();
+      long events = 0;
+      if (useActors)
+      {
+         if (writer != null)
+         {
+            System.err.println("actors cannot be checkpointed");
+         }
+         events = scheduler.updateOnTime(seconds * 1000);
+      }
+      else
+      {
+         for (long done = 0; done < seconds * 1000; done += interval)
+         {
+            events += run(scheduler, clock,
+               Math.min(interval, seconds * 1000 - done));
+            if (writer != null)
+            {
+               writer.save(world, scheduler, checkpointFile);
+            }
+         }
+      }
+      long wallMillis = System.currentTimeMillis() - start;
+      if (writer != null)
+      {
+         writer.close();
+      }
+      if (journal != null)
+      {
+         journal.close();
+      }
+      if (useActors)
+      {
+         scheduler.actors.shutdown();
+      }
+
+      System.out.println(String.format("world time:   %d s", seconds));
+      System.out.println(String.format("events:       %d", events));
+      System.out.println(String.format("wall time:    %d ms",
+         wallMillis));
+      System.out.println(String.format("events/sec:   %.0f",
+         events * 1000.0 / Math.max(wallMillis, 1)));
+      System.out.println(String.format("entities:     %d",
+         world.entities.size()));
+   }
+
+   /*
+      Executes every event due within duration milliseconds of world time,
+      advancing the clock straight to each event.  Returns the number of
+      events executed.
+   */
+   public static long run(EventScheduler scheduler, VirtualClock clock,
+      long duration)
+   {
+      long end = clock.currentTime() + duration;
+      long events = 0;
+
+      Event next;
+      while ((next = scheduler.eventQueue.peek()) != null && next.time < end)
+      {
+         clock.advanceTo(next.time);
+         events += scheduler.updateOnTime(next.time + 1);
+      }
+      clock.advanceTo(end);
+
+      return events;
+   }
+}
@@ -0,0 +1,150 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+/*
+HeapEventQueue: a binary heap of events where each event remembers its own slot,
+so a pending event can be removed in O(log n) instead of a linear search
+ */
+
+final class HeapEventQueue
+   implements EventQueue
+{
+   private static final int INITIAL_CAPACITY = 64;
+
+   private Event[] heap;
+   private int size;
+   private final Comparator<Event> comparator;
+
+   public HeapEventQueue(Comparator<Event> comparator)
+   {
+      this.heap = new Event[INITIAL_CAPACITY];
+      this.size = 0;
+      this.comparator = comparator;
+   }
+
+   public boolean isEmpty()
+   {
+      return this.size == 0;
+   }
+
+   public int size()
+   {
+      return this.size;
+   }
+
+   public Event peek()
+   {
+      return this.size == 0 ? null : this.heap[0];
+   }
+
+   public void add(Event event)
+   {
+      if (this.size == this.heap.length)
+      {
+         this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+      }
+
+      this.place(event, this.size);
+      this.size++;
+      this.siftUp(event.queueIndex);
+   }
+
+   public Event pollBefore(long time)
+   {
+      if (this.size == 0 || this.heap[0].time >= time)
+      {
+         return null;
+      }
+
+      return this.poll();
+   }
+
+   public Event poll()
+   {
+      if (this.size == 0)
+      {
+         return null;
+      }
+
+      Event first = this.heap[0];
+      this.removeAt(0);
+      return first;
+   }
+
+   public boolean remove(Event event)
+   {
+      int index = event.queueIndex;
+      if (index < 0 || index >= this.size || this.heap[index] != event)
+      {
+         return false;
+      }
+
+      this.removeAt(index);
+      return true;
+   }
+
+   private void removeAt(int index)
+   {
+      Event removed = this.heap[index];
+      this.size--;
+
+      if (index != this.size)
+      {
+         Event last = this.heap[this.size];
+         this.place(last, index);
+         this.siftDown(index);
+         if (this.heap[index] == last)
+         {
+            this.siftUp(index);
+         }
+      }
+
+      this.heap[this.size] = null;
+      removed.queueIndex = -1;
+   }
+
+   private void siftUp(int index)
+   {
+      Event event = this.heap[index];
+      while (index > 0)
+      {
+         int parent = (index - 1) >>> 1;
+         if (this.comparator.compare(event, this.heap[parent]) >= 0)
+         {
+            break;
+         }
+         this.place(this.heap[parent], index);
+         index = parent;
+      }
+      this.place(event, index);
+   }
+
+   private void siftDown(int index)
+   {
+      Event event = this.heap[index];
+      int half = this.size >>> 1;
+      while (index < half)
+      {
+         int child = 2 * index + 1;
+         int right = child + 1;
+         if (right < this.size &&
+            this.comparator.compare(this.heap[right], this.heap[child]) < 0)
+         {
+            child = right;
+         }
+         if (this.comparator.compare(event, this.heap[child]) <= 0)
+         {
+            break;
+         }
+         this.place(this.heap[child], index);
+         index = child;
+      }
+      this.place(event, index);
+   }
+
+   private void place(Event event, int index)
+   {
+      this.heap[index] = event;
+      event.queueIndex = index;
+   }
+}
@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.stream.IntStream;
 
 import processing.core.PApplet;
 import processing.core.PImage;
@@ -15,12 +16,12 @@ final class ImageStore
    public ImageStore(PImage defaultImage)
    {
       this.images = new HashMap<>();
-      defaultImages = new LinkedList<>();
-      defaultImages.add(defaultImage);
+      defaultImages = new SpriteAtlas(Collections.singletonList(defaultImage));
    }
 
    public void load(Scanner in, WorldModel world)
    {
+      LoadPhaseEvent phase = LoadPhaseEvent.start("parse world");
       int lineNumber = 0;
       while (in.hasNextLine())
       {
@@ -44,6 +45,7 @@ final class ImageStore
          }
          lineNumber++;
       }
+      phase.finish(lineNumber);
    }
 
    public boolean parseSgrass(String[] properties, WorldModel world)
@@ -164,15 +166,40 @@ final class ImageStore
        return false;
     }
 
+    /*
+       Loads imagelist in four phases: parse the lines, decode the files in
+       parallel, colour-key the decoded images in parallel, and pack each
+       key's frames, in imagelist order, into a SpriteAtlas.  Prints how
+       long each phase took.
+    */
     public void loadImages(Scanner in,
                            PApplet screen)
     {
+       long start = System.nanoTime();
+       LoadPhaseEvent phase = LoadPhaseEvent.start("parse imagelist");
+       List<String> keys = new ArrayList<>();
+       List<String> files = new ArrayList<>();
+       List<Integer> maskColors = new ArrayList<>();
        int lineNumber = 0;
        while (in.hasNextLine())
        {
           try
           {
-             Functions.processImageLine(this.images, in.nextLine(), screen);
+             String[] attrs = in.nextLine().split("\\s");
+             if (attrs.length >= 2)
+             {
+                Integer maskColor = null;
+                if (attrs.length >= Functions.KEYED_IMAGE_MIN)
+                {
+                   maskColor = screen.color(
+                      Integer.parseInt(attrs[Functions.KEYED_RED_IDX]),
+                      Integer.parseInt(attrs[Functions.KEYED_GREEN_IDX]),
+                      Integer.parseInt(attrs[Functions.KEYED_BLUE_IDX]));
+                }
+                keys.add(attrs[0]);
+                files.add(attrs[1]);
+                maskColors.add(maskColor);
+             }
           }
           catch (NumberFormatException e)
           {
@@ -181,6 +208,51 @@ final class ImageStore
           }
           lineNumber++;
        }
+       phase.finish(lineNumber);
+       long parsed = System.nanoTime();
+       phase = LoadPhaseEvent.start("decode images");
+
+       /* each task writes only its own slot, so order is kept */
+       PImage[] decoded = new PImage[files.size()];
+       IntStream.range(0, decoded.length).parallel().forEach(i -> {
+          PImage img = screen.loadImage(files.get(i));
+          decoded[i] = img != null && img.width != -1 ? img : null;
+       });
+       phase.finish(decoded.length);
+       long decodedAt = System.nanoTime();
+       phase = LoadPhaseEvent.start("key images");
+
+       IntStream.range(0, decoded.length).parallel().forEach(i -> {
+          if (decoded[i] != null && maskColors.get(i) != null)
+          {
+             Functions.setAlpha(decoded[i], maskColors.get(i), 0);
+          }
+       });
+       phase.finish(decoded.length);
+       long keyed = System.nanoTime();
+       phase = LoadPhaseEvent.start("pack atlases");
+
+       Map<String, List<PImage>> frames = new HashMap<>();
+       for (int i = 0; i < decoded.length; i++)
+       {
+          if (decoded[i] != null)
+          {
+             frames.computeIfAbsent(keys.get(i), key -> new ArrayList<>())
+                .add(decoded[i]);
+          }
+       }
+       for (Map.Entry<String, List<PImage>> entry : frames.entrySet())
+       {
+          this.images.put(entry.getKey(), new SpriteAtlas(entry.getValue()));
+       }
+       phase.finish(frames.size());
+       long packed = System.nanoTime();
+
+       System.out.println(String.format(
+          "loaded %d images: parse %.1f ms, decode %.1f ms, key %.1f ms, " +
+          "pack %.1f ms", decoded.length, (parsed - start) / 1e6,
+          (decodedAt - parsed) / 1e6, (keyed - decodedAt) / 1e6,
+          (packed - keyed) / 1e6));
     }
 
     public List<PImage> getImageList(String key)
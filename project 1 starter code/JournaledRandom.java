@@ -0,0 +1,37 @@
+import java.util.Random;
+
+/*
+JournaledRandom: stands in for Functions.rand while an EventJournal is
+recording. Every value comes from the wrapped generator, in the same sequence
+it would have produced alone, and is copied into the journal. It serializes
+as the wrapped generator, so a Checkpoint taken while journaling restores a
+plain Random
+ */
+
+final class JournaledRandom
+   extends Random
+{
+   private static final long serialVersionUID = 1L;
+
+   private final Random source;
+   private final EventJournal journal;
+
+   public JournaledRandom(Random source, EventJournal journal)
+   {
+      this.source = source;
+      this.journal = journal;
+   }
+
+   /* the top bits of the source's next 32, as source.next(bits) gives */
+   protected int next(int bits)
+   {
+      int value = this.source.nextInt() >>> (32 - bits);
+      this.journal.draw(value);
+      return value;
+   }
+
+   private Object writeReplace()
+   {
+      return this.source;
+   }
+}
@@ -0,0 +1,49 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+LoadPhaseEvent: a Flight Recorder event for one phase of loading images or a
+world, such as decoding the imagelist's files or parsing a save. Disabled
+unless a recording turns on virtualworld.LoadPhase
+ */
+
+@Name("virtualworld.LoadPhase")
+@Label("Load Phase")
+@Description("One phase of loading images or a world")
+@Category("Virtual World")
+@Enabled(false)
+@StackTrace(false)
+final class LoadPhaseEvent
+   extends jdk.jfr.Event
+{
+   @Label("Phase")
+   public String phase;
+
+   @Label("Items")
+   @Description("Lines, images or entities handled by the phase")
+   public int items;
+
+   /* begins timing phase */
+   public static LoadPhaseEvent start(String phase)
+   {
+      LoadPhaseEvent event = new LoadPhaseEvent();
+      event.phase = phase;
+      event.begin();
+      return event;
+   }
+
+   /* ends the phase and commits it if the recording wants it */
+   public void finish(int items)
+   {
+      this.end();
+      if (this.shouldCommit())
+      {
+         this.items = items;
+         this.commit();
+      }
+   }
+}
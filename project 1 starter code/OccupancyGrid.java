@@ -0,0 +1,141 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+OccupancyGrid: the entity standing in each cell, safe to share between
+threads. Cells are kept in ChunkedGrid.SIZE square chunks that are allocated
+the first time an entity enters them, so empty sea costs nothing. Reads are
+lock-free volatile loads. Writes take the lock of the band of BAND_ROWS rows
+holding the cell, and a move takes the locks of both cells' bands, lower band
+first, so no other write can come between clearing the old cell and filling
+the new one
+ */
+
+final class OccupancyGrid
+{
+   public static final int BAND_ROWS = 8;
+
+   public final int numRows;
+   public final int numCols;
+   private final int chunkCols;
+   private final AtomicReferenceArray<AtomicReferenceArray<Entity>> chunks;
+   private final Object[] bands;
+
+   public OccupancyGrid(int numRows, int numCols)
+   {
+      this.numRows = numRows;
+      this.numCols = numCols;
+      this.chunkCols = (numCols + ChunkedGrid.MASK) >> ChunkedGrid.SHIFT;
+      this.chunks = new AtomicReferenceArray<>(this.chunkCols *
+         ((numRows + ChunkedGrid.MASK) >> ChunkedGrid.SHIFT));
+      this.bands = new Object[(numRows + BAND_ROWS - 1) / BAND_ROWS];
+
+      for (int band = 0; band < this.bands.length; band++)
+      {
+         this.bands[band] = new Object();
+      }
+   }
+
+   public Entity get(int x, int y)
+   {
+      AtomicReferenceArray<Entity> cells = this.chunks.get(this.chunkOf(x, y));
+      return cells == null ? null : cells.get(cellOf(x, y));
+   }
+
+   /* sets the cell whatever it held, returning the previous occupant */
+   public Entity set(int x, int y, Entity entity)
+   {
+      synchronized (this.bandOf(y))
+      {
+         AtomicReferenceArray<Entity> cells = this.cells(x, y, entity != null);
+         return cells == null ? null : cells.getAndSet(cellOf(x, y), entity);
+      }
+   }
+
+   /* puts entity in the cell only if the cell is empty */
+   public boolean claim(int x, int y, Entity entity)
+   {
+      synchronized (this.bandOf(y))
+      {
+         return this.cells(x, y, true).compareAndSet(cellOf(x, y), null,
+            entity);
+      }
+   }
+
+   /* empties the cell, returning whoever was in it */
+   public Entity remove(int x, int y)
+   {
+      return this.set(x, y, null);
+   }
+
+   /*
+      Takes entity out of (fromX, fromY) and puts it in (toX, toY) as one
+      step.  Returns the entity that stood in the destination, which is now
+      off the grid, or null.  The source is only cleared if it still holds
+      entity.
+   */
+   public Entity move(Entity entity, int fromX, int fromY, int toX, int toY)
+   {
+      Object first = this.bandOf(Math.min(fromY, toY));
+      Object second = this.bandOf(Math.max(fromY, toY));
+
+      synchronized (first)
+      {
+         synchronized (second)
+         {
+            AtomicReferenceArray<Entity> from = this.cells(fromX, fromY,
+               false);
+            if (from != null)
+            {
+               from.compareAndSet(cellOf(fromX, fromY), entity, null);
+            }
+            return this.cells(toX, toY, true).getAndSet(cellOf(toX, toY),
+               entity);
+         }
+      }
+   }
+
+   /* chunks that have had an entity in them */
+   public int allocatedChunks()
+   {
+      int allocated = 0;
+      for (int chunk = 0; chunk < this.chunks.length(); chunk++)
+      {
+         if (this.chunks.get(chunk) != null)
+         {
+            allocated++;
+         }
+      }
+      return allocated;
+   }
+
+   /* the chunk holding (x, y), made if create is set and it is missing */
+   private AtomicReferenceArray<Entity> cells(int x, int y, boolean create)
+   {
+      int chunk = this.chunkOf(x, y);
+      AtomicReferenceArray<Entity> cells = this.chunks.get(chunk);
+      if (cells == null && create)
+      {
+         this.chunks.compareAndSet(chunk, null, new AtomicReferenceArray<>(
+            ChunkedGrid.SIZE * ChunkedGrid.SIZE));
+         cells = this.chunks.get(chunk);
+      }
+      return cells;
+   }
+
+   private int chunkOf(int x, int y)
+   {
+      return (y >> ChunkedGrid.SHIFT) * this.chunkCols +
+         (x >> ChunkedGrid.SHIFT);
+   }
+
+   private static int cellOf(int x, int y)
+   {
+      return ((y & ChunkedGrid.MASK) << ChunkedGrid.SHIFT) |
+         (x & ChunkedGrid.MASK);
+   }
+
+   private Object bandOf(int y)
+   {
+      return this.bands[y / BAND_ROWS];
+   }
+}
@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ParallelTickExecutor: runs the events of one tick on a ForkJoinPool. The world
+is cut into REGION_SIZE x REGION_SIZE regions and every due event is filed
+under the region its entity stands in. An action only touches the cells next
+to its entity, so regions of the same checkerboard colour are at least a region
+apart and can run side by side; the four colours run one after the other.
+Events whose entity has wandered out of its region run serially afterwards
+ */
+
+final class ParallelTickExecutor
+{
+   public static final int REGION_SIZE = SpatialIndex.BUCKET_SIZE;
+
+   private static final int COLORS = 4;
+   private static final EntityKind[] FIELD_KINDS = { EntityKind.FISH,
+      EntityKind.ATLANTIS, EntityKind.SGRASS };
+
+   private final EventScheduler scheduler;
+   private final WorldModel world;
+   private final ForkJoinPool pool;
+   private final int regionRows;
+   private final int regionCols;
+   private final List<Event>[] regions;
+   private final List<RegionTask>[] phases;
+   private final List<Event> serial;
+
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   public ParallelTickExecutor(EventScheduler scheduler, WorldModel world,
+      ForkJoinPool pool)
+   {
+      this.scheduler = scheduler;
+      this.world = world;
+      this.pool = pool;
+      this.regionRows = (world.numRows + REGION_SIZE - 1) / REGION_SIZE;
+      this.regionCols = (world.numCols + REGION_SIZE - 1) / REGION_SIZE;
+      this.regions = new List[this.regionRows * this.regionCols];
+      this.phases = new List[COLORS];
+      this.serial = new ArrayList<>();
+
+      for (int color = 0; color < COLORS; color++)
+      {
+         this.phases[color] = new ArrayList<>();
+      }
+
+      /* a field created lazily mid-tick would be built from a grid other
+         threads are changing, so make them all up front */
+      if (world.pathing == PathingKind.FLOW_FIELD)
+      {
+         for (EntityKind kind : FIELD_KINDS)
+         {
+            world.distanceField(kind);
+         }
+      }
+   }
+
+   /* same contract as EventScheduler.updateOnTime */
+   public int updateOnTime(long time)
+   {
+      int executed = 0;
+      while (this.drain(time))
+      {
+         for (int color = 0; color < COLORS; color++)
+         {
+            executed += this.runPhase(this.phases[color]);
+            this.phases[color].clear();
+         }
+
+         this.serial.sort(new EventComparator());
+         for (Event event : this.serial)
+         {
+            if (this.scheduler.runEvent(event))
+            {
+               executed++;
+            }
+         }
+         this.serial.clear();
+      }
+      return executed;
+   }
+
+   /* files every event due before time under its region */
+   private boolean drain(long time)
+   {
+      boolean any = false;
+      Event event;
+      while ((event = this.scheduler.pollBefore(time)) != null)
+      {
+         any = true;
+         Point pos = event.entity.position;
+         if (event.cancelled || !this.world.withinBounds(pos))
+         {
+            this.serial.add(event);
+            continue;
+         }
+
+         int regionRow = pos.y / REGION_SIZE;
+         int regionCol = pos.x / REGION_SIZE;
+         int region = regionRow * this.regionCols + regionCol;
+         List<Event> events = this.regions[region];
+         if (events == null)
+         {
+            /* made when first needed, as most regions of a big map stay
+               empty */
+            events = new ArrayList<>();
+            this.regions[region] = events;
+         }
+         if (events.isEmpty())
+         {
+            int color = (regionRow & 1) * 2 + (regionCol & 1);
+            this.phases[color].add(new RegionTask(events, regionRow,
+               regionCol));
+         }
+         events.add(event);
+      }
+      return any;
+   }
+
+   private int runPhase(List<RegionTask> tasks)
+   {
+      int executed = 0;
+      if (tasks.size() == 1)
+      {
+         executed = tasks.get(0).runRegion();
+      }
+      else if (!tasks.isEmpty())
+      {
+         executed = this.pool.invoke(new PhaseTask(tasks));
+      }
+
+      for (RegionTask task : tasks)
+      {
+         this.serial.addAll(task.deferred);
+      }
+      return executed;
+   }
+
+   private final class PhaseTask extends RecursiveTask<Integer>
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final List<RegionTask> tasks;
+
+      public PhaseTask(List<RegionTask> tasks)
+      {
+         this.tasks = tasks;
+      }
+
+      protected Integer compute()
+      {
+         invokeAll(this.tasks);
+
+         int executed = 0;
+         for (RegionTask task : this.tasks)
+         {
+            executed += task.join();
+         }
+         return executed;
+      }
+   }
+
+   private final class RegionTask extends RecursiveTask<Integer>
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final List<Event> events;
+      private final int minX;
+      private final int minY;
+      private final int maxX;
+      private final int maxY;
+      private final List<Event> deferred;
+
+      public RegionTask(List<Event> events, int regionRow, int regionCol)
+      {
+         this.events = events;
+         this.minX = regionCol * REGION_SIZE - 1;
+         this.minY = regionRow * REGION_SIZE - 1;
+         this.maxX = (regionCol + 1) * REGION_SIZE;
+         this.maxY = (regionRow + 1) * REGION_SIZE;
+         this.deferred = new ArrayList<>();
+      }
+
+      protected Integer compute()
+      {
+         return this.runRegion();
+      }
+
+      /* events of this region in time order; an entity one cell outside its
+         region still cannot reach a region of the same colour */
+      public int runRegion()
+      {
+         int executed = 0;
+         for (Event event : this.events)
+         {
+            Point pos = event.entity.position;
+            if (!event.cancelled && (pos.x < this.minX || pos.x > this.maxX ||
+               pos.y < this.minY || pos.y > this.maxY))
+            {
+               this.deferred.add(event);
+            }
+            else if (scheduler.runEvent(event))
+            {
+               executed++;
+            }
+         }
+         this.events.clear();
+         return executed;
+      }
+   }
+}
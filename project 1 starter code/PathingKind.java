@@ -0,0 +1,6 @@
+enum PathingKind
+{
+   GREEDY,
+   FLOW_FIELD,
+   A_STAR
+}
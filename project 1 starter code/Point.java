@@ -1,5 +1,8 @@
 final class Point
 {
+   /* packed form of (-1, -1), the position of an entity off the grid */
+   public static final int NONE = -1;
+
    public final int x;
    public final int y;
 
@@ -23,6 +26,31 @@ final class Point
        return deltaX * deltaX + deltaY * deltaY;
     }
 
+    /*
+       Packs a column and row into one int, column in the low 16 bits and row
+       in the high 16, so hot paths can pass positions around without
+       allocating.  Both must lie in [-1, 32767).
+    */
+    public static int pack(int x, int y)
+    {
+       return (y << 16) | (x & 0xffff);
+    }
+
+    public static int unpackX(int packed)
+    {
+       return (short)packed;
+    }
+
+    public static int unpackY(int packed)
+    {
+       return packed >> 16;
+    }
+
+    public int pack()
+    {
+       return pack(this.x, this.y);
+    }
+
     public String toString()
    {
       return "(" + x + "," + y + ")";
@@ -0,0 +1,34 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+SchedulerTickEvent: a Flight Recorder event for one EventScheduler.updateOnTime
+call, with how many events it ran. Disabled unless a recording turns on
+virtualworld.SchedulerTick, as virtualworld.jfc does
+ */
+
+@Name("virtualworld.SchedulerTick")
+@Label("Scheduler Tick")
+@Description("One EventScheduler.updateOnTime batch")
+@Category("Virtual World")
+@Enabled(false)
+@StackTrace(false)
+final class SchedulerTickEvent
+   extends jdk.jfr.Event
+{
+   /* checked before one is created, so none is allocated while off */
+   public static final EventType TYPE =
+      EventType.getEventType(SchedulerTickEvent.class);
+
+   @Label("Clock Time")
+   @Description("Clock time, in ms, the batch ran events up to")
+   public long time;
+
+   @Label("Events")
+   public int events;
+}
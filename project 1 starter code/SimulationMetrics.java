@@ -0,0 +1,340 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+SimulationMetrics: counters kept by an EventScheduler and its WorldModel and
+published over JMX as OBJECT_NAME. The scheduler counts every event it runs by
+ActionKind and EntityKind, how late it ran it, and every unscheduleAllEvents;
+the world counts live entities by kind and captures. Counting is a LongAdder increment, so
+the threads of a parallel tick do not contend and nothing is allocated per
+event; the maps and rates are only built when a JMX client reads them
+ */
+
+final class SimulationMetrics
+   implements SimulationMetricsMXBean
+{
+   public static final String OBJECT_NAME =
+      "VirtualWorld:type=SimulationMetrics";
+
+   /* bucket b > 0 holds lateness in [2^(b-1), 2^b) ms; the last is open */
+   public static final int LATENESS_BUCKETS = 24;
+
+   /* events per second are recomputed at most this often */
+   public static final long SAMPLE_NANOS = 1000000000L;
+
+   private static final ActionKind[] ACTION_KINDS = ActionKind.values();
+   private static final EntityKind[] ENTITY_KINDS = EntityKind.values();
+
+   private final EventScheduler scheduler;
+
+   /* indexed by action kind * ENTITY_KINDS.length + entity kind */
+   private final LongAdder[] executed;
+   private final LongAdder[] lateness;
+   private final LongAccumulator maxLateness;
+   private final LongAdder unscheduleCalls;
+   private final LongAdder unscheduledEvents;
+   private final LongAdder[] liveEntities;
+   private final LongAdder captures;
+
+   private long sampleNanos;
+   private long[] sampleCounts;
+   private double[] sampleRates;
+
+   public SimulationMetrics(EventScheduler scheduler)
+   {
+      this.scheduler = scheduler;
+      this.executed = newAdders(ACTION_KINDS.length * ENTITY_KINDS.length);
+      this.lateness = newAdders(LATENESS_BUCKETS);
+      this.maxLateness = new LongAccumulator(Math::max, 0);
+      this.unscheduleCalls = new LongAdder();
+      this.unscheduledEvents = new LongAdder();
+      this.liveEntities = newAdders(ENTITY_KINDS.length);
+      this.captures = new LongAdder();
+      this.sampleRates = new double[this.executed.length];
+   }
+
+   /*
+      Starts counting for world and scheduler, including the entities
+      already in world, and registers the metrics with the platform MBean
+      server.  Call before the simulation starts running.
+   */
+   public static SimulationMetrics attach(WorldModel world,
+      EventScheduler scheduler)
+   {
+      SimulationMetrics metrics = new SimulationMetrics(scheduler);
+      for (Entity entity : world.entities)
+      {
+         metrics.entityAdded(entity.kind);
+      }
+      world.metrics = metrics;
+      scheduler.metrics = metrics;
+      metrics.register();
+      return metrics;
+   }
+
+   /* registers as OBJECT_NAME, replacing whatever was registered there */
+   public void register()
+   {
+      try
+      {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = new ObjectName(OBJECT_NAME);
+         if (server.isRegistered(name))
+         {
+            server.unregisterMBean(name);
+         }
+         server.registerMBean(this, name);
+      }
+      catch (JMException e)
+      {
+         System.err.println(String.format("metrics not registered: %s",
+            e.getMessage()));
+      }
+   }
+
+   /* event is about to run at clock time now */
+   public void eventExecuted(Event event, long now)
+   {
+      this.executed[cell(event.action.kind, event.entity.kind)].increment();
+
+      long late = Math.max(now - event.time, 0);
+      this.lateness[Math.min(64 - Long.numberOfLeadingZeros(late),
+         LATENESS_BUCKETS - 1)].increment();
+      this.maxLateness.accumulate(late);
+   }
+
+   public void unscheduled(int events)
+   {
+      this.unscheduleCalls.increment();
+      this.unscheduledEvents.add(events);
+   }
+
+   public void entityAdded(EntityKind kind)
+   {
+      this.liveEntities[kind.ordinal()].increment();
+   }
+
+   public void entityRemoved(EntityKind kind)
+   {
+      this.liveEntities[kind.ordinal()].decrement();
+   }
+
+   /* a successful moveToFull, moveToNotFull or moveToCrab */
+   public void captured()
+   {
+      this.captures.increment();
+   }
+
+   public int getQueueDepth()
+   {
+      /* a racy read of the size is fine for monitoring */
+      return this.scheduler.eventQueue.size();
+   }
+
+   public long getEventsExecuted()
+   {
+      return sum(this.executed);
+   }
+
+   public Map<String, Long> getEventsExecutedByAction()
+   {
+      Map<String, Long> byAction = new LinkedHashMap<>();
+      for (ActionKind action : ACTION_KINDS)
+      {
+         long total = 0;
+         for (EntityKind entity : ENTITY_KINDS)
+         {
+            total += this.executed[cell(action, entity)].sum();
+         }
+         byAction.put(action.name(), total);
+      }
+      return byAction;
+   }
+
+   public Map<String, Long> getEventsExecutedByEntity()
+   {
+      Map<String, Long> byEntity = new LinkedHashMap<>();
+      for (EntityKind entity : ENTITY_KINDS)
+      {
+         long total = 0;
+         for (ActionKind action : ACTION_KINDS)
+         {
+            total += this.executed[cell(action, entity)].sum();
+         }
+         byEntity.put(entity.name(), total);
+      }
+      return byEntity;
+   }
+
+   public double getEventsPerSecond()
+   {
+      double total = 0;
+      for (double rate : this.rates())
+      {
+         total += rate;
+      }
+      return total;
+   }
+
+   public Map<String, Double> getEventsPerSecondByAction()
+   {
+      double[] rates = this.rates();
+      Map<String, Double> byAction = new LinkedHashMap<>();
+      for (ActionKind action : ACTION_KINDS)
+      {
+         double total = 0;
+         for (EntityKind entity : ENTITY_KINDS)
+         {
+            total += rates[cell(action, entity)];
+         }
+         byAction.put(action.name(), total);
+      }
+      return byAction;
+   }
+
+   public Map<String, Double> getEventsPerSecondByEntity()
+   {
+      double[] rates = this.rates();
+      Map<String, Double> byEntity = new LinkedHashMap<>();
+      for (EntityKind entity : ENTITY_KINDS)
+      {
+         double total = 0;
+         for (ActionKind action : ACTION_KINDS)
+         {
+            total += rates[cell(action, entity)];
+         }
+         byEntity.put(entity.name(), total);
+      }
+      return byEntity;
+   }
+
+   public Map<String, Long> getLatenessHistogram()
+   {
+      Map<String, Long> histogram = new LinkedHashMap<>();
+      histogram.put("0ms", this.lateness[0].sum());
+      for (int bucket = 1; bucket < LATENESS_BUCKETS; bucket++)
+      {
+         long low = 1L << (bucket - 1);
+         long high = (1L << bucket) - 1;
+         String label = bucket == LATENESS_BUCKETS - 1 ? ">=" + low + "ms" :
+            low == high ? low + "ms" : low + "-" + high + "ms";
+         histogram.put(label, this.lateness[bucket].sum());
+      }
+      return histogram;
+   }
+
+   public long getMaxLatenessMillis()
+   {
+      return this.maxLateness.get();
+   }
+
+   public long getUnscheduleAllCalls()
+   {
+      return this.unscheduleCalls.sum();
+   }
+
+   public long getEventsUnscheduled()
+   {
+      return this.unscheduledEvents.sum();
+   }
+
+   public long getLiveEntities()
+   {
+      return sum(this.liveEntities);
+   }
+
+   public Map<String, Long> getLiveEntitiesByKind()
+   {
+      Map<String, Long> byKind = new LinkedHashMap<>();
+      for (EntityKind kind : ENTITY_KINDS)
+      {
+         byKind.put(kind.name(), this.liveEntities[kind.ordinal()].sum());
+      }
+      return byKind;
+   }
+
+   public long getCaptures()
+   {
+      return this.captures.sum();
+   }
+
+   public synchronized void reset()
+   {
+      for (LongAdder adder : this.executed)
+      {
+         adder.reset();
+      }
+      for (LongAdder adder : this.lateness)
+      {
+         adder.reset();
+      }
+      this.maxLateness.reset();
+      this.unscheduleCalls.reset();
+      this.unscheduledEvents.reset();
+      this.captures.reset();
+      this.sampleCounts = null;
+      this.sampleRates = new double[this.executed.length];
+   }
+
+   /*
+      Rates per executed counter over the last interval of at least
+      SAMPLE_NANOS between reads; zero until there have been two reads.
+   */
+   private synchronized double[] rates()
+   {
+      long now = System.nanoTime();
+      if (this.sampleCounts != null && now - this.sampleNanos < SAMPLE_NANOS)
+      {
+         return this.sampleRates;
+      }
+
+      long[] counts = new long[this.executed.length];
+      for (int i = 0; i < counts.length; i++)
+      {
+         counts[i] = this.executed[i].sum();
+      }
+      if (this.sampleCounts != null)
+      {
+         double seconds = (now - this.sampleNanos) / 1e9;
+         for (int i = 0; i < counts.length; i++)
+         {
+            this.sampleRates[i] = (counts[i] - this.sampleCounts[i]) / seconds;
+         }
+      }
+      this.sampleNanos = now;
+      this.sampleCounts = counts;
+      return this.sampleRates;
+   }
+
+   private static int cell(ActionKind action, EntityKind entity)
+   {
+      return action.ordinal() * ENTITY_KINDS.length + entity.ordinal();
+   }
+
+   private static LongAdder[] newAdders(int count)
+   {
+      LongAdder[] adders = new LongAdder[count];
+      for (int i = 0; i < count; i++)
+      {
+         adders[i] = new LongAdder();
+      }
+      return adders;
+   }
+
+   private static long sum(LongAdder[] adders)
+   {
+      long total = 0;
+      for (LongAdder adder : adders)
+      {
+         total += adder.sum();
+      }
+      return total;
+   }
+}
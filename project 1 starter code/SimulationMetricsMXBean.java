@@ -0,0 +1,45 @@
+import java.util.Map;
+
+/*
+SimulationMetricsMXBean: what SimulationMetrics shows over JMX. Maps are keyed
+by ActionKind or EntityKind constant names and appear as tables in JConsole
+and VisualVM
+ */
+
+public interface SimulationMetricsMXBean
+{
+   /* events waiting in the scheduler's queue */
+   int getQueueDepth();
+
+   long getEventsExecuted();
+
+   Map<String, Long> getEventsExecutedByAction();
+
+   Map<String, Long> getEventsExecutedByEntity();
+
+   /* averaged between the last two reads at least a second apart */
+   double getEventsPerSecond();
+
+   Map<String, Double> getEventsPerSecondByAction();
+
+   Map<String, Double> getEventsPerSecondByEntity();
+
+   /* events run, bucketed by how many ms after their time they ran */
+   Map<String, Long> getLatenessHistogram();
+
+   long getMaxLatenessMillis();
+
+   long getUnscheduleAllCalls();
+
+   long getEventsUnscheduled();
+
+   long getLiveEntities();
+
+   Map<String, Long> getLiveEntitiesByKind();
+
+   /* fish eaten, atlantis reached and seaGrass destroyed */
+   long getCaptures();
+
+   /* zeroes every counter except the live entity counts */
+   void reset();
+}
@@ -0,0 +1,44 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/*
+SlowActionEvent: a Flight Recorder event for an Action that took longer than
+the threshold to execute, 10 ms unless the recording says otherwise. Disabled
+unless a recording turns on virtualworld.SlowAction
+ */
+
+@Name("virtualworld.SlowAction")
+@Label("Slow Action")
+@Description("An entity action that ran longer than the threshold")
+@Category("Virtual World")
+@Enabled(false)
+@Threshold("10 ms")
+@StackTrace(false)
+final class SlowActionEvent
+   extends jdk.jfr.Event
+{
+   /* checked before one is created, so none is allocated while off */
+   public static final EventType TYPE =
+      EventType.getEventType(SlowActionEvent.class);
+
+   @Label("Action Kind")
+   public String actionKind;
+
+   @Label("Entity Kind")
+   public String entityKind;
+
+   @Label("Entity")
+   public String entityId;
+
+   @Label("X")
+   public int x;
+
+   @Label("Y")
+   public int y;
+}
@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/*
+SpatialIndex: the entities of one kind bucketed into a uniform grid of
+BUCKET_SIZE x BUCKET_SIZE cells, so a nearest query searches outward ring by
+ring from the query's bucket and stops as soon as no farther ring can hold a
+closer entity. Buckets are grouped into pages of PAGE_SIZE x PAGE_SIZE made
+on first use, so empty parts of a large world hold no bucket slots
+ */
+
+final class SpatialIndex
+{
+   public static final int BUCKET_SIZE = 8;
+   public static final int PAGE_SHIFT = 5;
+   public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+   private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+   private final int bucketRows;
+   private final int bucketCols;
+   private final int pageCols;
+   private final List<Entity>[][] pages;
+   private int size;
+
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   public SpatialIndex(int numRows, int numCols)
+   {
+      this.bucketRows = (numRows + BUCKET_SIZE - 1) / BUCKET_SIZE;
+      this.bucketCols = (numCols + BUCKET_SIZE - 1) / BUCKET_SIZE;
+      this.pageCols = (this.bucketCols + PAGE_MASK) >> PAGE_SHIFT;
+      this.pages = new List[this.pageCols *
+         ((this.bucketRows + PAGE_MASK) >> PAGE_SHIFT)][];
+      this.size = 0;
+   }
+
+   public synchronized int size()
+   {
+      return this.size;
+   }
+
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   public synchronized void add(Entity entity, Point pos)
+   {
+      int row = pos.y / BUCKET_SIZE;
+      int col = pos.x / BUCKET_SIZE;
+      int page = (row >> PAGE_SHIFT) * this.pageCols + (col >> PAGE_SHIFT);
+      if (this.pages[page] == null)
+      {
+         this.pages[page] = new List[PAGE_SIZE * PAGE_SIZE];
+      }
+
+      List<Entity>[] buckets = this.pages[page];
+      int bucket = ((row & PAGE_MASK) << PAGE_SHIFT) | (col & PAGE_MASK);
+      if (buckets[bucket] == null)
+      {
+         buckets[bucket] = new ArrayList<>();
+      }
+      buckets[bucket].add(entity);
+      this.size++;
+   }
+
+   public synchronized void remove(Entity entity, Point pos)
+   {
+      List<Entity> bucket = this.bucket(pos.y / BUCKET_SIZE,
+         pos.x / BUCKET_SIZE);
+      if (bucket == null)
+      {
+         return;
+      }
+
+      int index = bucket.indexOf(entity);
+      if (index >= 0)
+      {
+         /* order within a bucket does not matter, so swap-remove */
+         int last = bucket.size() - 1;
+         bucket.set(index, bucket.get(last));
+         bucket.remove(last);
+         this.size--;
+      }
+   }
+
+   public synchronized void move(Entity entity, Point oldPos, Point newPos)
+   {
+      if (oldPos.y / BUCKET_SIZE != newPos.y / BUCKET_SIZE ||
+         oldPos.x / BUCKET_SIZE != newPos.x / BUCKET_SIZE)
+      {
+         this.remove(entity, oldPos);
+         this.add(entity, newPos);
+      }
+   }
+
+   /*
+      Nearest entity to pos by squared distance.  Ties go to the entity with
+      the smallest row, then the smallest column, so the answer does not
+      depend on insertion order.
+   */
+   public synchronized Optional<Entity> nearest(Point pos)
+   {
+      if (this.size == 0)
+      {
+         return Optional.empty();
+      }
+
+      int centerRow = Functions.clamp(pos.y / BUCKET_SIZE, 0,
+         this.bucketRows - 1);
+      int centerCol = Functions.clamp(pos.x / BUCKET_SIZE, 0,
+         this.bucketCols - 1);
+      int maxRing = Math.max(Math.max(centerRow, this.bucketRows - 1 - centerRow),
+         Math.max(centerCol, this.bucketCols - 1 - centerCol));
+
+      Entity nearest = null;
+      int nearestDistance = Integer.MAX_VALUE;
+
+      for (int ring = 0; ring <= maxRing; ring++)
+      {
+         for (int row = centerRow - ring; row <= centerRow + ring; row++)
+         {
+            if (row < 0 || row >= this.bucketRows)
+            {
+               continue;
+            }
+
+            boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+            int step = edgeRow ? 1 : 2 * ring;
+
+            for (int col = centerCol - ring; col <= centerCol + ring;
+               col += Math.max(step, 1))
+            {
+               if (col < 0 || col >= this.bucketCols)
+               {
+                  continue;
+               }
+
+               List<Entity> bucket = this.bucket(row, col);
+               if (bucket == null)
+               {
+                  continue;
+               }
+
+               for (Entity other : bucket)
+               {
+                  int distance = other.position.distanceSquared(pos);
+                  if (distance < nearestDistance ||
+                     (distance == nearestDistance && before(other, nearest)))
+                  {
+                     nearest = other;
+                     nearestDistance = distance;
+                  }
+               }
+            }
+         }
+
+         /* every cell in the next ring is at least this far away on one axis */
+         long bound = (long)ring * BUCKET_SIZE + 1;
+         if (nearest != null && bound * bound > nearestDistance)
+         {
+            break;
+         }
+      }
+
+      return Optional.ofNullable(nearest);
+   }
+
+   private static boolean before(Entity lft, Entity rht)
+   {
+      return lft.position.y < rht.position.y ||
+         (lft.position.y == rht.position.y && lft.position.x < rht.position.x);
+   }
+
+   /* the bucket at (row, col), or null when nothing has been put there */
+   private List<Entity> bucket(int row, int col)
+   {
+      List<Entity>[] buckets = this.pages[(row >> PAGE_SHIFT) * this.pageCols
+         + (col >> PAGE_SHIFT)];
+      return buckets == null ? null :
+         buckets[((row & PAGE_MASK) << PAGE_SHIFT) | (col & PAGE_MASK)];
+   }
+}
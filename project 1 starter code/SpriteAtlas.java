@@ -0,0 +1,90 @@
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+/*
+SpriteAtlas: the animation frames for one image key packed side by side into a
+single image, with an array of frame offsets. It is still a List of the frame
+images, now with constant-time get, and draw blits a frame straight out of the
+atlas
+ */
+
+final class SpriteAtlas
+   extends AbstractList<PImage>
+   implements RandomAccess
+{
+   public final PImage atlas;
+   private final PImage[] frames;
+   private final int[] offsets;
+
+   public SpriteAtlas(List<PImage> frames)
+   {
+      this.frames = frames.toArray(new PImage[0]);
+      this.offsets = new int[this.frames.length];
+
+      int width = 0;
+      int height = 0;
+      int format = PApplet.RGB;
+      for (int i = 0; i < this.frames.length; i++)
+      {
+         this.offsets[i] = width;
+         width += this.frames[i].width;
+         height = Math.max(height, this.frames[i].height);
+         if (this.frames[i].format == PApplet.ARGB)
+         {
+            format = PApplet.ARGB;
+         }
+      }
+
+      this.atlas = new PImage(Math.max(width, 1), Math.max(height, 1), format);
+      for (int i = 0; i < this.frames.length; i++)
+      {
+         PImage frame = this.frames[i];
+         frame.loadPixels();
+         for (int row = 0; row < frame.height; row++)
+         {
+            System.arraycopy(frame.pixels, row * frame.width,
+               this.atlas.pixels, row * this.atlas.width + this.offsets[i],
+               frame.width);
+         }
+      }
+      this.atlas.updatePixels();
+   }
+
+   public PImage get(int index)
+   {
+      return this.frames[index];
+   }
+
+   public int size()
+   {
+      return this.frames.length;
+   }
+
+   /* frame index with its top left corner at (x, y) */
+   public void draw(PGraphics target, int index, float x, float y)
+   {
+      PImage frame = this.frames[index];
+      int u = this.offsets[index];
+      target.image(this.atlas, x, y, frame.width, frame.height, u, 0,
+         u + frame.width, frame.height);
+   }
+
+   /* draws frame index of images, from the atlas when there is one */
+   public static void draw(PGraphics target, List<PImage> images, int index,
+      float x, float y)
+   {
+      if (images instanceof SpriteAtlas)
+      {
+         ((SpriteAtlas)images).draw(target, index, x, y);
+      }
+      else
+      {
+         target.image(images.get(index), x, y);
+      }
+   }
+}
@@ -0,0 +1,270 @@
+/*
+TimingWheelEventQueue: a hashed timing wheel with one-millisecond ticks.
+Events hang off the slot for their due tick in an intrusive list, so scheduling
+and cancelling are O(1), and updateOnTime drains one slot at a time instead of
+re-heapifying after every event. The earliest event is cached and found again
+only when it leaves the queue, by scanning a bitmap of occupied slots forward
+from its time, so peek and skipping empty ticks cost little however far apart
+events are
+ */
+
+final class TimingWheelEventQueue
+   implements EventQueue
+{
+   public static final int DEFAULT_SLOT_COUNT = 1 << 16;
+   public static final int MIN_SLOT_COUNT = 64;
+
+   private final Event[] slots;
+   private final long[] occupied;
+   private final int mask;
+   private long cursor;
+   private int size;
+
+   /* the earliest event, when earliestKnown; otherwise every event is due
+      no earlier than floor */
+   private Event earliest;
+   private boolean earliestKnown;
+   private long floor;
+
+   public TimingWheelEventQueue(int slotCount, long startTime)
+   {
+      if (slotCount < MIN_SLOT_COUNT || Integer.bitCount(slotCount) != 1)
+      {
+         throw new IllegalArgumentException(String.format(
+            "slot count must be a power of two of at least %d: %d",
+            MIN_SLOT_COUNT, slotCount));
+      }
+
+      this.slots = new Event[slotCount];
+      this.occupied = new long[slotCount >>> 6];
+      this.mask = slotCount - 1;
+      this.cursor = startTime;
+      this.size = 0;
+      this.earliestKnown = true;
+   }
+
+   public boolean isEmpty()
+   {
+      return this.size == 0;
+   }
+
+   public int size()
+   {
+      return this.size;
+   }
+
+   public void add(Event event)
+   {
+      /* anything already overdue is filed under the current tick, which
+         keeps every event either in the cursor slot or ahead of it */
+      int slot = (int)(Math.max(event.time, this.cursor) & this.mask);
+
+      event.queueIndex = slot;
+      event.prevQueued = null;
+      event.nextQueued = this.slots[slot];
+      if (event.nextQueued != null)
+      {
+         event.nextQueued.prevQueued = event;
+      }
+      this.slots[slot] = event;
+      this.occupied[slot >>> 6] |= 1L << slot;
+
+      if (this.size++ == 0)
+      {
+         this.earliest = event;
+         this.earliestKnown = true;
+      }
+      else if (this.earliestKnown)
+      {
+         if (event.time < this.earliest.time)
+         {
+            this.earliest = event;
+         }
+      }
+      else
+      {
+         this.floor = Math.min(this.floor, event.time);
+      }
+   }
+
+   public boolean remove(Event event)
+   {
+      int slot = event.queueIndex;
+      if (slot < 0 || slot >= this.slots.length ||
+         (event.prevQueued == null && this.slots[slot] != event))
+      {
+         return false;
+      }
+
+      this.unlink(event);
+      return true;
+   }
+
+   public Event peek()
+   {
+      if (!this.earliestKnown)
+      {
+         this.earliest = this.findEarliest();
+         this.earliestKnown = true;
+      }
+      return this.earliest;
+   }
+
+   /*
+      The cursor stops on the last tick before time, never on time itself,
+      so an event added later for that tick is still found by the next call
+      with the same time.
+   */
+   public Event pollBefore(long time)
+   {
+      long last = time - 1;
+
+      while (this.size > 0)
+      {
+         Event due = this.findDue(this.cursor, Math.min(this.cursor, last));
+         if (due != null)
+         {
+            this.unlink(due);
+            return due;
+         }
+
+         if (this.cursor >= last)
+         {
+            return null;
+         }
+
+         /* nothing is due in this tick, so everything left is due after
+            it: jump straight to the earliest event */
+         this.cursor = Math.min(Math.max(this.peek().time, this.cursor + 1),
+            last);
+      }
+
+      this.cursor = Math.max(this.cursor, last);
+      return null;
+   }
+
+   /* first event in the slot for tick that falls due by limit; events that
+      share a tick run in no particular order, as with the heap */
+   private Event findDue(long tick, long limit)
+   {
+      for (Event event = this.slots[(int)(tick & this.mask)]; event != null;
+         event = event.nextQueued)
+      {
+         if (event.time <= limit)
+         {
+            return event;
+         }
+      }
+      return null;
+   }
+
+   /*
+      Every event is filed under the tick it is due, or the cursor tick if it
+      was overdue, so the first occupied tick from the cursor, or from floor
+      if later, holding a due event holds the earliest.  Falls back to
+      looking at every event when all are a revolution or more ahead.
+   */
+   private Event findEarliest()
+   {
+      long end = this.cursor + this.slots.length;
+      long tick = this.nextOccupied(Math.max(this.cursor, this.floor), end);
+      if (tick == this.cursor)
+      {
+         /* overdue events share the cursor slot with different times */
+         Event earliest = null;
+         for (Event event = this.slots[(int)(tick & this.mask)];
+            event != null; event = event.nextQueued)
+         {
+            if (event.time <= tick &&
+               (earliest == null || event.time < earliest.time))
+            {
+               earliest = event;
+            }
+         }
+         if (earliest != null)
+         {
+            return earliest;
+         }
+         tick = this.nextOccupied(tick + 1, end);
+      }
+
+      /* past the cursor, an event due by its slot's tick is due exactly then */
+      for (; tick < end; tick = this.nextOccupied(tick + 1, end))
+      {
+         Event due = this.findDue(tick, tick);
+         if (due != null)
+         {
+            return due;
+         }
+      }
+
+      Event earliest = null;
+      for (Event head : this.slots)
+      {
+         for (Event event = head; event != null; event = event.nextQueued)
+         {
+            if (earliest == null || event.time < earliest.time)
+            {
+               earliest = event;
+            }
+         }
+      }
+      return earliest;
+   }
+
+   /* the first tick in [tick, end) whose slot holds an event, or end */
+   private long nextOccupied(long tick, long end)
+   {
+      while (tick < end)
+      {
+         int slot = (int)(tick & this.mask);
+         long bits = this.occupied[slot >>> 6] >>> slot;
+         if (bits != 0)
+         {
+            return Math.min(tick + Long.numberOfTrailingZeros(bits), end);
+         }
+         tick += 64 - (slot & 63);
+      }
+      return end;
+   }
+
+   private void unlink(Event event)
+   {
+      if (event.prevQueued != null)
+      {
+         event.prevQueued.nextQueued = event.nextQueued;
+      }
+      else
+      {
+         this.slots[event.queueIndex] = event.nextQueued;
+         if (event.nextQueued == null)
+         {
+            this.occupied[event.queueIndex >>> 6] &=
+               ~(1L << event.queueIndex);
+         }
+      }
+
+      if (event.nextQueued != null)
+      {
+         event.nextQueued.prevQueued = event.prevQueued;
+      }
+
+      event.nextQueued = null;
+      event.prevQueued = null;
+      event.queueIndex = -1;
+      this.size--;
+
+      if (this.size == 0)
+      {
+         this.earliest = null;
+         this.earliestKnown = true;
+      }
+      else if (event == this.earliest)
+      {
+         /* it was the earliest, so nothing left is due before it */
+         this.earliest = null;
+         this.earliestKnown = false;
+         this.floor = event.time;
+      }
+   }
+}
@@ -19,8 +19,13 @@ final class Viewport
 
     public boolean contains(Point p)
     {
-       return p.y >= this.row && p.y < this.row + this.numRows &&
-          p.x >= this.col && p.x < this.col + this.numCols;
+       return contains(p.x, p.y);
+    }
+
+    public boolean contains(int col, int row)
+    {
+       return row >= this.row && row < this.row + this.numRows &&
+          col >= this.col && col < this.col + this.numCols;
     }
 
     public void shift(int col, int row)
@@ -38,4 +43,15 @@ final class Viewport
     {
        return new Point(col - this.col, row - this.row);
     }
+
+    /* packed forms of the two mappings above, for per-frame drawing */
+    public int viewportToWorldPacked(int col, int row)
+    {
+       return Point.pack(col + this.col, row + this.row);
+    }
+
+    public int worldToViewportPacked(int col, int row)
+    {
+       return Point.pack(col - this.col, row - this.row);
+    }
 }
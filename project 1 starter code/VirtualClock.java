@@ -0,0 +1,25 @@
+/*
+VirtualClock: simulation time that only moves when told to, so a headless run
+can jump straight to the next pending event instead of waiting for it
+ */
+
+final class VirtualClock
+   implements Clock
+{
+   public long time;
+
+   public VirtualClock(long startTime)
+   {
+      this.time = startTime;
+   }
+
+   public long currentTime()
+   {
+      return this.time;
+   }
+
+   public void advanceTo(long time)
+   {
+      this.time = Math.max(this.time, time);
+   }
+}
@@ -1,6 +1,9 @@
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 import processing.core.*;
 
 /*
@@ -32,6 +35,9 @@ public final class VirtualWorld
    public static final int DEFAULT_IMAGE_COLOR = 0x808080;
 
    public static final String LOAD_FILE_NAME = "world.sav";
+   public static final String CHECKPOINT_FILE_NAME =
+      "world" + Checkpoint.EXTENSION;
+   public static final char CHECKPOINT_KEY = 'c';
 
    public static final String FAST_FLAG = "-fast";
    public static final String FASTER_FLAG = "-faster";
@@ -39,13 +45,30 @@ public final class VirtualWorld
    public static final double FAST_SCALE = 0.5;
    public static final double FASTER_SCALE = 0.25;
    public static final double FASTEST_SCALE = 0.10;
+   public static final String WHEEL_FLAG = "-wheel";
+   public static final String FLOW_FLAG = "-flow";
+   public static final String ASTAR_FLAG = "-astar";
+   public static final String SOA_FLAG = "-soa";
+   public static final String PARALLEL_FLAG = "-parallel";
+   public static final String RESUME_FLAG = "-resume";
+   public static final String SIZE_FLAG = "-size";
 
    public static double timeScale = 1.0;
+   public static boolean useTimingWheel = false;
+   public static PathingKind pathing = PathingKind.GREEDY;
+   public static boolean useEntityTable = false;
+   public static boolean useParallelTick = false;
+   public static boolean resume = false;
+
+   /* -size COLSxROWS; the world is drawn from its top left corner */
+   public static int worldRows = WORLD_ROWS;
+   public static int worldCols = WORLD_COLS;
 
    public ImageStore imageStore;
    public WorldModel world;
    public WorldView view;
    public EventScheduler scheduler;
+   public CheckpointWriter checkpoints;
 
    public long next_time;
 
@@ -61,23 +84,62 @@ public final class VirtualWorld
    {
       this.imageStore = new ImageStore(
          createImageColored(TILE_WIDTH, TILE_HEIGHT, DEFAULT_IMAGE_COLOR));
-      this.world = new WorldModel(WORLD_ROWS, WORLD_COLS,
+      this.world = new WorldModel(worldRows, worldCols,
          createDefaultBackground(imageStore));
+      this.world.pathing = pathing;
       this.view = new WorldView(VIEW_ROWS, VIEW_COLS, this, world,
          TILE_WIDTH, TILE_HEIGHT);
-      this.scheduler = new EventScheduler(timeScale);
+      Clock clock = new WallClock();
+      this.scheduler = new EventScheduler(timeScale,
+         createEventQueue(clock.currentTime()), clock);
+      SimulationMetrics.attach(world, scheduler);
 
       loadImages(IMAGE_LIST_FILE_NAME, imageStore, this);
-      loadWorld(world, LOAD_FILE_NAME, imageStore);
+      if (!resume)
+      {
+         loadWorld(world, LOAD_FILE_NAME, imageStore);
+      }
+      if (useEntityTable)
+      {
+         world.enableEntityTable();
+      }
 
-      scheduleActions(world, scheduler, imageStore);
+      if (useParallelTick)
+      {
+         this.scheduler.parallel = new ParallelTickExecutor(this.scheduler,
+            world, ForkJoinPool.commonPool());
+      }
 
-      next_time = System.currentTimeMillis() + TIMER_ACTION_PERIOD;
+      if (resume)
+      {
+         try
+         {
+            int skipped = Checkpoint.restore(Paths.get(CHECKPOINT_FILE_NAME),
+               world, scheduler, imageStore);
+            if (skipped > 0)
+            {
+               System.err.println(String.format(
+                  "%d entities in %s could not be placed", skipped,
+                  CHECKPOINT_FILE_NAME));
+            }
+         }
+         catch (IOException e)
+         {
+            System.err.println(e.getMessage());
+         }
+      }
+      else
+      {
+         scheduleActions(world, scheduler, imageStore);
+      }
+      this.checkpoints = new CheckpointWriter();
+
+      next_time = clock.currentTime() + TIMER_ACTION_PERIOD;
    }
 
    public void draw()
    {
-      long time = System.currentTimeMillis();
+      long time = this.scheduler.clock.currentTime();
       if (time >= next_time)
       {
          this.scheduler.updateOnTime(time);
@@ -111,6 +173,11 @@ public final class VirtualWorld
          }
          view.shiftView(dx, dy);
       }
+      else if (key == CHECKPOINT_KEY)
+      {
+         this.checkpoints.save(world, scheduler,
+            Paths.get(CHECKPOINT_FILE_NAME));
+      }
    }
 
    public static Background createDefaultBackground(ImageStore imageStore)
@@ -131,6 +198,17 @@ public final class VirtualWorld
       return img;
    }
 
+   public static EventQueue createEventQueue(long startTime)
+   {
+      if (useTimingWheel)
+      {
+         return new TimingWheelEventQueue(
+            TimingWheelEventQueue.DEFAULT_SLOT_COUNT, startTime);
+      }
+
+      return new HeapEventQueue(new EventComparator());
+   }
+
    private static void loadImages(String filename, ImageStore imageStore,
       PApplet screen)
    {
@@ -145,15 +223,38 @@ public final class VirtualWorld
       }
    }
 
+   /* a WorldSnapshot when filename ends in WorldSnapshot.EXTENSION,
+      otherwise the text format */
    public static void loadWorld(WorldModel world, String filename,
       ImageStore imageStore)
    {
+      if (filename.endsWith(WorldSnapshot.EXTENSION))
+      {
+         try
+         {
+            int skipped = WorldSnapshot.read(Paths.get(filename), world,
+               imageStore);
+            world.compact();
+            if (skipped > 0)
+            {
+               System.err.println(String.format(
+                  "%d entities in %s could not be placed", skipped,
+                  filename));
+            }
+         }
+         catch (IOException e)
+         {
+            System.err.println(e.getMessage());
+         }
+         return;
+      }
+
       try
       {
-         Scanner in = new Scanner(new File(filename));
-         imageStore.load(in, world);
+         WorldFileParser.load(Paths.get(filename), world, imageStore);
+         world.compact();
       }
-      catch (FileNotFoundException e)
+      catch (IOException e)
       {
          System.err.println(e.getMessage());
       }
@@ -172,9 +273,9 @@ public final class VirtualWorld
 
    public static void parseCommandLine(String [] args)
    {
-      for (String arg : args)
+      for (int i = 0; i < args.length; i++)
       {
-         switch (arg)
+         switch (args[i])
          {
             case FAST_FLAG:
                timeScale = Math.min(FAST_SCALE, timeScale);
@@ -185,10 +286,47 @@ public final class VirtualWorld
             case FASTEST_FLAG:
                timeScale = Math.min(FASTEST_SCALE, timeScale);
                break;
+            case WHEEL_FLAG:
+               useTimingWheel = true;
+               break;
+            case FLOW_FLAG:
+               pathing = PathingKind.FLOW_FIELD;
+               break;
+            case ASTAR_FLAG:
+               pathing = PathingKind.A_STAR;
+               break;
+            case SOA_FLAG:
+               useEntityTable = true;
+               break;
+            case PARALLEL_FLAG:
+               useParallelTick = true;
+               break;
+            case RESUME_FLAG:
+               resume = true;
+               break;
+            case SIZE_FLAG:
+               if (i + 1 < args.length)
+               {
+                  parseSize(args[++i]);
+               }
+               break;
          }
       }
    }
 
+   /* COLSxROWS, as in 2000x1500 */
+   public static void parseSize(String size)
+   {
+      String[] sides = size.split("x");
+      if (sides.length != 2)
+      {
+         System.err.println(String.format("bad world size %s", size));
+         return;
+      }
+      worldCols = Integer.parseInt(sides[0]);
+      worldRows = Integer.parseInt(sides[1]);
+   }
+
    public static void main(String [] args)
    {
       parseCommandLine(args);
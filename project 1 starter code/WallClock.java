@@ -0,0 +1,12 @@
+/*
+WallClock: real time, used when the world is drawn by the Processing sketch
+ */
+
+final class WallClock
+   implements Clock
+{
+   public long currentTime()
+   {
+      return System.currentTimeMillis();
+   }
+}
@@ -0,0 +1,449 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import processing.core.PImage;
+
+/*
+WorldFileParser: a streaming reader for the text world.sav format. Lines are
+found in a reusable byte buffer filled from a channel, split on whitespace
+into token offsets, dispatched on the key bytes and parsed in place; the only
+strings made are entity and background ids. Bad lines are counted rather than
+reported one by one
+ */
+
+final class WorldFileParser
+{
+   private static final int BUFFER_SIZE = 1 << 16;
+   private static final int MAX_TOKENS = 16;
+   private static final int MAX_REPORTED_LINES = 5;
+
+   private static final byte[][] KEYS = {
+      bytes(Functions.BGND_KEY), bytes(Functions.OCTO_KEY),
+      bytes(Functions.OBSTACLE_KEY), bytes(Functions.FISH_KEY),
+      bytes(Functions.ATLANTIS_KEY), bytes(Functions.SGRASS_KEY) };
+   private static final int BGND = 0;
+   private static final int OCTO = 1;
+   private static final int OBSTACLE = 2;
+   private static final int FISH = 3;
+   private static final int ATLANTIS = 4;
+   private static final int SGRASS = 5;
+
+   /* outcomes of one line */
+   private static final int LOADED = 0;
+   private static final int INVALID = 1;
+   private static final int OCCUPIED = 2;
+
+   private final WorldModel world;
+   private final ImageStore imageStore;
+   private final List<PImage> octoImages;
+   private final List<PImage> obstacleImages;
+   private final List<PImage> fishImages;
+   private final List<PImage> atlantisImages;
+   private final List<PImage> sgrassImages;
+
+   private byte[] buffer;
+   private int start;
+   private int end;
+   private final int[] tokenStarts;
+   private final int[] tokenEnds;
+   private int tokenCount;
+
+   /* one Background per distinct id, with the id's bytes */
+   private final List<Background> backgrounds;
+   private final List<byte[]> backgroundIds;
+
+   public int lines;
+   public int invalidLines;
+   public int occupiedLines;
+   public final List<Integer> firstInvalid;
+   public final List<Integer> firstOccupied;
+
+   /*
+      Loads a text save into world, printing one summary line for any
+      entries that could not be used.
+   */
+   public static void load(Path file, WorldModel world, ImageStore imageStore)
+      throws IOException
+   {
+      LoadPhaseEvent phase = LoadPhaseEvent.start("parse world");
+      WorldFileParser parser = new WorldFileParser(world, imageStore);
+      try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ))
+      {
+         parser.parse(in);
+      }
+      phase.finish(parser.lines);
+
+      String report = parser.report();
+      if (report != null)
+      {
+         System.err.println(String.format("%s: %s", file, report));
+      }
+   }
+
+   public WorldFileParser(WorldModel world, ImageStore imageStore)
+   {
+      this.world = world;
+      this.imageStore = imageStore;
+      this.octoImages = imageStore.getImageList(Functions.OCTO_KEY);
+      this.obstacleImages = imageStore.getImageList(Functions.OBSTACLE_KEY);
+      this.fishImages = imageStore.getImageList(Functions.FISH_KEY);
+      this.atlantisImages = imageStore.getImageList(Functions.ATLANTIS_KEY);
+      this.sgrassImages = imageStore.getImageList(Functions.SGRASS_KEY);
+      this.buffer = new byte[BUFFER_SIZE];
+      this.tokenStarts = new int[MAX_TOKENS];
+      this.tokenEnds = new int[MAX_TOKENS];
+      this.backgrounds = new ArrayList<>();
+      this.backgroundIds = new ArrayList<>();
+      this.firstInvalid = new ArrayList<>();
+      this.firstOccupied = new ArrayList<>();
+   }
+
+   /* reads every line of in into the world */
+   public void parse(ReadableByteChannel in) throws IOException
+   {
+      boolean eof = false;
+      while (true)
+      {
+         int newline = this.indexOfNewline();
+         if (newline < 0)
+         {
+            if (eof)
+            {
+               if (this.start < this.end)
+               {
+                  this.parseLine(this.start, this.end);
+                  this.start = this.end;
+               }
+               return;
+            }
+            eof = !this.fill(in);
+            continue;
+         }
+
+         this.parseLine(this.start, newline);
+         this.start = newline + 1;
+      }
+   }
+
+   /* one line summing up the bad lines, or null if there were none */
+   public String report()
+   {
+      if (this.invalidLines == 0 && this.occupiedLines == 0)
+      {
+         return null;
+      }
+      return String.format(
+         "%d invalid entries (lines %s), %d entries on occupied cells " +
+         "(lines %s)", this.invalidLines, this.firstInvalid,
+         this.occupiedLines, this.firstOccupied);
+   }
+
+   private int indexOfNewline()
+   {
+      for (int i = this.start; i < this.end; i++)
+      {
+         if (this.buffer[i] == '\n')
+         {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   /* moves the partial line to the front and reads more; false at eof */
+   private boolean fill(ReadableByteChannel in) throws IOException
+   {
+      int pending = this.end - this.start;
+      if (pending == this.buffer.length)
+      {
+         byte[] larger = new byte[this.buffer.length * 2];
+         System.arraycopy(this.buffer, this.start, larger, 0, pending);
+         this.buffer = larger;
+      }
+      else
+      {
+         System.arraycopy(this.buffer, this.start, this.buffer, 0, pending);
+      }
+      this.start = 0;
+      this.end = pending;
+
+      int read = in.read(ByteBuffer.wrap(this.buffer, this.end,
+         this.buffer.length - this.end));
+      if (read > 0)
+      {
+         this.end += read;
+      }
+      return read >= 0;
+   }
+
+   private void parseLine(int from, int to)
+   {
+      int lineNumber = this.lines++;
+      if (!this.tokenize(from, to))
+      {
+         this.invalid(lineNumber);
+         return;
+      }
+      if (this.tokenCount == 0)
+      {
+         this.invalid(lineNumber);
+         return;
+      }
+
+      int result;
+      try
+      {
+         result = this.dispatch();
+      }
+      catch (NumberFormatException e)
+      {
+         result = INVALID;
+      }
+
+      if (result == INVALID)
+      {
+         this.invalid(lineNumber);
+      }
+      else if (result == OCCUPIED)
+      {
+         this.occupiedLines++;
+         if (this.firstOccupied.size() < MAX_REPORTED_LINES)
+         {
+            this.firstOccupied.add(lineNumber);
+         }
+      }
+   }
+
+   private void invalid(int lineNumber)
+   {
+      this.invalidLines++;
+      if (this.firstInvalid.size() < MAX_REPORTED_LINES)
+      {
+         this.firstInvalid.add(lineNumber);
+      }
+   }
+
+   /* false when the line has more tokens than any entry */
+   private boolean tokenize(int from, int to)
+   {
+      this.tokenCount = 0;
+      int i = from;
+      while (true)
+      {
+         while (i < to && isSpace(this.buffer[i]))
+         {
+            i++;
+         }
+         if (i == to)
+         {
+            return true;
+         }
+         if (this.tokenCount == MAX_TOKENS)
+         {
+            return false;
+         }
+
+         this.tokenStarts[this.tokenCount] = i;
+         while (i < to && !isSpace(this.buffer[i]))
+         {
+            i++;
+         }
+         this.tokenEnds[this.tokenCount++] = i;
+      }
+   }
+
+   private int dispatch()
+   {
+      switch (this.key())
+      {
+         case BGND:
+            if (this.tokenCount != Functions.BGND_NUM_PROPERTIES)
+            {
+               return INVALID;
+            }
+            this.world.setBackground(this.point(Functions.BGND_COL,
+               Functions.BGND_ROW), this.background(Functions.BGND_ID));
+            return LOADED;
+
+         case OCTO:
+            if (this.tokenCount != Functions.OCTO_NUM_PROPERTIES)
+            {
+               return INVALID;
+            }
+            return this.place(Functions.createOctoNotFull(
+               this.string(Functions.OCTO_ID),
+               this.integer(Functions.OCTO_LIMIT),
+               this.point(Functions.OCTO_COL, Functions.OCTO_ROW),
+               this.integer(Functions.OCTO_ACTION_PERIOD),
+               this.integer(Functions.OCTO_ANIMATION_PERIOD),
+               this.octoImages));
+
+         case OBSTACLE:
+            if (this.tokenCount != Functions.OBSTACLE_NUM_PROPERTIES)
+            {
+               return INVALID;
+            }
+            return this.place(Functions.createObstacle(
+               this.string(Functions.OBSTACLE_ID),
+               this.point(Functions.OBSTACLE_COL, Functions.OBSTACLE_ROW),
+               this.obstacleImages));
+
+         case FISH:
+            if (this.tokenCount != Functions.FISH_NUM_PROPERTIES)
+            {
+               return INVALID;
+            }
+            return this.place(Functions.createFish(
+               this.string(Functions.FISH_ID),
+               this.point(Functions.FISH_COL, Functions.FISH_ROW),
+               this.integer(Functions.FISH_ACTION_PERIOD),
+               this.fishImages));
+
+         case ATLANTIS:
+            if (this.tokenCount != Functions.ATLANTIS_NUM_PROPERTIES)
+            {
+               return INVALID;
+            }
+            return this.place(Functions.createAtlantis(
+               this.string(Functions.ATLANTIS_ID),
+               this.point(Functions.ATLANTIS_COL, Functions.ATLANTIS_ROW),
+               this.atlantisImages));
+
+         case SGRASS:
+            if (this.tokenCount != Functions.SGRASS_NUM_PROPERTIES)
+            {
+               return INVALID;
+            }
+            return this.place(Functions.createSgrass(
+               this.string(Functions.SGRASS_ID),
+               this.point(Functions.SGRASS_COL, Functions.SGRASS_ROW),
+               this.integer(Functions.SGRASS_ACTION_PERIOD),
+               this.sgrassImages));
+
+         default:
+            return INVALID;
+      }
+   }
+
+   /* adds entity unless its cell is off the world or already taken */
+   private int place(Entity entity)
+   {
+      if (!this.world.withinBounds(entity.position))
+      {
+         return INVALID;
+      }
+      return this.world.tryAddEntity(entity) ? LOADED : OCCUPIED;
+   }
+
+   /* index into KEYS of the first token, or -1 */
+   private int key()
+   {
+      int length = this.tokenEnds[0] - this.tokenStarts[0];
+      for (int k = 0; k < KEYS.length; k++)
+      {
+         byte[] key = KEYS[k];
+         if (key.length == length && this.tokenEquals(0, key))
+         {
+            return k;
+         }
+      }
+      return -1;
+   }
+
+   private boolean tokenEquals(int token, byte[] value)
+   {
+      int offset = this.tokenStarts[token];
+      for (int i = 0; i < value.length; i++)
+      {
+         if (this.buffer[offset + i] != value[i])
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private int integer(int token)
+   {
+      int i = this.tokenStarts[token];
+      int to = this.tokenEnds[token];
+      boolean negative = this.buffer[i] == '-';
+      if (negative || this.buffer[i] == '+')
+      {
+         i++;
+      }
+      if (i == to || to - i > 10)
+      {
+         throw new NumberFormatException();
+      }
+
+      long value = 0;
+      for (; i < to; i++)
+      {
+         int digit = this.buffer[i] - '0';
+         if (digit < 0 || digit > 9)
+         {
+            throw new NumberFormatException();
+         }
+         value = value * 10 + digit;
+      }
+
+      value = negative ? -value : value;
+      if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+      {
+         throw new NumberFormatException();
+      }
+      return (int)value;
+   }
+
+   private Point point(int colToken, int rowToken)
+   {
+      return this.world.pointAt(this.integer(colToken),
+         this.integer(rowToken));
+   }
+
+   private String string(int token)
+   {
+      return new String(this.buffer, this.tokenStarts[token],
+         this.tokenEnds[token] - this.tokenStarts[token],
+         StandardCharsets.UTF_8);
+   }
+
+   private Background background(int token)
+   {
+      int length = this.tokenEnds[token] - this.tokenStarts[token];
+      for (int i = 0; i < this.backgroundIds.size(); i++)
+      {
+         byte[] id = this.backgroundIds.get(i);
+         if (id.length == length && this.tokenEquals(token, id))
+         {
+            return this.backgrounds.get(i);
+         }
+      }
+
+      String id = this.string(token);
+      Background background = new Background(id,
+         this.imageStore.getImageList(id));
+      this.backgrounds.add(background);
+      this.backgroundIds.add(bytes(id));
+      return background;
+   }
+
+   private static boolean isSpace(byte b)
+   {
+      return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '\f' ||
+         b == 0x0b;
+   }
+
+   private static byte[] bytes(String value)
+   {
+      return value.getBytes(StandardCharsets.UTF_8);
+   }
+}
@@ -0,0 +1,276 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/*
+WorldGenerator: seeded random worlds in the world.sav grammar, for running the
+loader, scheduler and renderer at sizes world.sav never reaches. Every cell
+gets a background line, sea with about one in BUBBLES_ODDS bubbles, then each
+cell holds an entity with probability density, its kind drawn from the mix
+weights and its properties from the ranges world.sav uses. Lines are streamed
+to the output, so a world of millions of entities is never held in memory,
+and the same seed and settings always give the same file. Load the result
+with the same -size it was generated at
+
+   java WorldGenerator [-size COLSxROWS] [-density D] [-seed N]
+      [-mix obstacle:45,octo:20,seaGrass:20,fish:10,atlantis:5] out.sav
+ */
+
+final class WorldGenerator
+{
+   public static final String DENSITY_FLAG = "-density";
+   public static final String SEED_FLAG = "-seed";
+   public static final String MIX_FLAG = "-mix";
+
+   public static final double DEFAULT_DENSITY = 0.05;
+   public static final long DEFAULT_SEED = 0;
+   public static final String DEFAULT_MIX =
+      "obstacle:45,octo:20,seaGrass:20,fish:10,atlantis:5";
+   public static final int BUBBLES_ODDS = 25;
+
+   /* the kinds a mix may name, in the order their weights are kept */
+   private static final String[] KINDS = { Functions.OBSTACLE_KEY,
+      Functions.OCTO_KEY, Functions.SGRASS_KEY, Functions.FISH_KEY,
+      Functions.ATLANTIS_KEY };
+
+   public final int numRows;
+   public final int numCols;
+   public final double density;
+   private final int[] weights;
+   private final int totalWeight;
+
+   /* entities of each kind, in KINDS order, written by the last write */
+   public final long[] counts = new long[KINDS.length];
+
+   public static void main(String[] args) throws IOException
+   {
+      String filename = null;
+      double density = DEFAULT_DENSITY;
+      long seed = DEFAULT_SEED;
+      String mix = DEFAULT_MIX;
+      for (int i = 0; i < args.length; i++)
+      {
+         if (args[i].equals(VirtualWorld.SIZE_FLAG) && i + 1 < args.length)
+         {
+            VirtualWorld.parseSize(args[++i]);
+         }
+         else if (args[i].equals(DENSITY_FLAG) && i + 1 < args.length)
+         {
+            density = Double.parseDouble(args[++i]);
+         }
+         else if (args[i].equals(SEED_FLAG) && i + 1 < args.length)
+         {
+            seed = Long.parseLong(args[++i]);
+         }
+         else if (args[i].equals(MIX_FLAG) && i + 1 < args.length)
+         {
+            mix = args[++i];
+         }
+         else
+         {
+            filename = args[i];
+         }
+      }
+      if (filename == null)
+      {
+         System.err.println("usage: java WorldGenerator [-size COLSxROWS] "
+            + "[-density D] [-seed N] [-mix kind:weight,...] <out.sav>");
+         return;
+      }
+
+      WorldGenerator generator;
+      try
+      {
+         generator = new WorldGenerator(VirtualWorld.worldRows,
+            VirtualWorld.worldCols, density, mix);
+      }
+      catch (IllegalArgumentException e)
+      {
+         System.err.println(e.getMessage());
+         return;
+      }
+
+      long start = System.nanoTime();
+      try (Writer out = new BufferedWriter(Files.newBufferedWriter(
+         Paths.get(filename), StandardCharsets.UTF_8), 1 << 16))
+      {
+         generator.write(out, new Random(seed));
+      }
+      long wallMillis = (System.nanoTime() - start) / 1000000;
+
+      StringBuilder kinds = new StringBuilder();
+      for (int kind = 0; kind < KINDS.length; kind++)
+      {
+         kinds.append(kind == 0 ? "" : ", ").append(generator.counts[kind])
+            .append(' ').append(KINDS[kind]);
+      }
+      System.out.println(String.format("wrote %d entities (%s) on %dx%d to "
+         + "%s in %d ms; load it with %s %dx%d", generator.entityCount(),
+         kinds, generator.numCols, generator.numRows, filename, wallMillis,
+         VirtualWorld.SIZE_FLAG, generator.numCols, generator.numRows));
+   }
+
+   /*
+      mix is a comma separated list of kind:weight, where kind is one of the
+      world.sav entity keys and weight a whole number; kinds left out are
+      never generated.
+   */
+   public WorldGenerator(int numRows, int numCols, double density,
+      String mix)
+   {
+      if (numRows < 1 || numCols < 1 || numRows > WorldModel.MAX_SIDE ||
+         numCols > WorldModel.MAX_SIDE)
+      {
+         throw new IllegalArgumentException(String.format(
+            "bad world size %dx%d", numCols, numRows));
+      }
+      if (!(density >= 0 && density <= 1))
+      {
+         throw new IllegalArgumentException(String.format(
+            "density %s is not between 0 and 1", density));
+      }
+
+      this.numRows = numRows;
+      this.numCols = numCols;
+      this.density = density;
+      this.weights = parseMix(mix);
+
+      int total = 0;
+      for (int weight : this.weights)
+      {
+         total += weight;
+      }
+      if (total == 0)
+      {
+         throw new IllegalArgumentException(String.format(
+            "mix %s has no weight", mix));
+      }
+      this.totalWeight = total;
+   }
+
+   public long entityCount()
+   {
+      long total = 0;
+      for (long count : this.counts)
+      {
+         total += count;
+      }
+      return total;
+   }
+
+   /*
+      Writes the whole world to out: every background, row by row, then
+      the entities, row by row.  All randomness comes from rand.
+   */
+   public void write(Appendable out, Random rand) throws IOException
+   {
+      for (int kind = 0; kind < KINDS.length; kind++)
+      {
+         this.counts[kind] = 0;
+      }
+
+      for (int row = 0; row < this.numRows; row++)
+      {
+         for (int col = 0; col < this.numCols; col++)
+         {
+            out.append(Functions.BGND_KEY).append(' ')
+               .append(rand.nextInt(BUBBLES_ODDS) == 0 ? "bubbles" : "sea")
+               .append(' ').append(Integer.toString(col)).append(' ')
+               .append(Integer.toString(row)).append('\n');
+         }
+      }
+
+      for (int row = 0; row < this.numRows; row++)
+      {
+         for (int col = 0; col < this.numCols; col++)
+         {
+            if (rand.nextDouble() >= this.density)
+            {
+               continue;
+            }
+
+            int kind = this.pickKind(rand.nextInt(this.totalWeight));
+            this.counts[kind]++;
+            String key = KINDS[kind];
+            out.append(key).append(' ').append(key).append('_')
+               .append(Integer.toString(col)).append('_')
+               .append(Integer.toString(row)).append(' ')
+               .append(Integer.toString(col)).append(' ')
+               .append(Integer.toString(row));
+
+            switch (key)
+            {
+               case Functions.OCTO_KEY:
+                  appendInt(out, 2);
+                  appendInt(out, 800 + rand.nextInt(200));
+                  appendInt(out, 100);
+                  break;
+               case Functions.SGRASS_KEY:
+                  appendInt(out, 9000 + rand.nextInt(6000));
+                  break;
+               case Functions.FISH_KEY:
+                  appendInt(out, Functions.FISH_CORRUPT_MIN + rand.nextInt(
+                     Functions.FISH_CORRUPT_MAX - Functions.FISH_CORRUPT_MIN));
+                  break;
+            }
+            out.append('\n');
+         }
+      }
+   }
+
+   /* the kind whose slice of the cumulative weights holds pick */
+   private int pickKind(int pick)
+   {
+      int kind = 0;
+      while (pick >= this.weights[kind])
+      {
+         pick -= this.weights[kind];
+         kind++;
+      }
+      return kind;
+   }
+
+   private static void appendInt(Appendable out, int value) throws IOException
+   {
+      out.append(' ').append(Integer.toString(value));
+   }
+
+   private static int[] parseMix(String mix)
+   {
+      int[] weights = new int[KINDS.length];
+      for (String entry : mix.split(","))
+      {
+         String[] parts = entry.trim().split(":");
+         int kind = 0;
+         while (kind < KINDS.length && !KINDS[kind].equals(parts[0]))
+         {
+            kind++;
+         }
+         if (parts.length != 2 || kind == KINDS.length)
+         {
+            throw new IllegalArgumentException(String.format(
+               "bad mix entry %s, expected kind:weight with kind one of %s",
+               entry, String.join(", ", KINDS)));
+         }
+
+         try
+         {
+            weights[kind] = Integer.parseInt(parts[1]);
+         }
+         catch (NumberFormatException e)
+         {
+            weights[kind] = -1;
+         }
+         if (weights[kind] < 0)
+         {
+            throw new IllegalArgumentException(String.format(
+               "bad weight in mix entry %s", entry));
+         }
+      }
+      return weights;
+   }
+}
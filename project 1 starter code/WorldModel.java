@@ -1,6 +1,8 @@
 import processing.core.PImage;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /*
 WorldModel ideally keeps track of the actual size of our grid world and what is in that world
@@ -9,24 +11,65 @@ in terms of entities and background elements
 
 final class WorldModel
 {
+   public static final Point OFF_GRID = new Point(-1, -1);
+   public static final int MAX_SIDE = Short.MAX_VALUE;
+
    public int numRows;
    public int numCols;
-   public Background background[][];
-   public Entity occupancy[][];
+   public ChunkedGrid<Background> background;
+   public OccupancyGrid occupancy;
+   public ChunkedGrid<Point> points;
+   public DirtyCells dirtyCells;
    public Set<Entity> entities;
+   public EntityTable table;
+   public BackgroundCache backgroundCache;
+   public Map<EntityKind, SpatialIndex> spatialIndex;
+   public Map<EntityKind, DistanceField> distanceFields;
+   public volatile DistanceField[] liveFields;
+   public PathingKind pathing;
+   public AStarSearch pathfinder;
+
+   /* cell changes while pathing is A_STAR; a mover that found no route
+      searches again only once this has moved on */
+   private final LongAdder cellChanges;
+
+   /* when set, counts live entities by kind and captures */
+   public SimulationMetrics metrics;
 
+   /*
+      Everything kept per cell is stored in lazily allocated chunks, so a
+      large world that is mostly empty sea costs little more than its
+      populated area.  Points pack each coordinate into 16 bits, which
+      bounds both sides.
+   */
    public WorldModel(int numRows, int numCols, Background defaultBackground)
    {
+      if (numRows > MAX_SIDE || numCols > MAX_SIDE)
+      {
+         throw new IllegalArgumentException(String.format(
+            "a world is at most %d cells on a side", MAX_SIDE));
+      }
+
       this.numRows = numRows;
       this.numCols = numCols;
-      this.background = new Background[numRows][numCols];
-      this.occupancy = new Entity[numRows][numCols];
-      this.entities = new HashSet<>();
-
-      for (int row = 0; row < numRows; row++)
+      this.background = new ChunkedGrid<>(numRows, numCols,
+         defaultBackground);
+      this.occupancy = new OccupancyGrid(numRows, numCols);
+      this.points = new ChunkedGrid<>(numRows, numCols, null);
+      this.dirtyCells = new DirtyCells(this.background.chunkRows *
+         this.background.chunkCols * ChunkedGrid.SIZE * ChunkedGrid.SIZE);
+      this.entities = ConcurrentHashMap.newKeySet();
+      this.spatialIndex = new EnumMap<>(EntityKind.class);
+
+      for (EntityKind kind : EntityKind.values())
       {
-         Arrays.fill(this.background[row], defaultBackground);
+         this.spatialIndex.put(kind, new SpatialIndex(numRows, numCols));
       }
+
+      this.distanceFields = new EnumMap<>(EntityKind.class);
+      this.liveFields = new DistanceField[0];
+      this.cellChanges = new LongAdder();
+      this.pathing = PathingKind.GREEDY;
    }
 
    public boolean moveToFull(Entity octo,
@@ -34,18 +77,21 @@ final class WorldModel
    {
       if (octo.position.adjacent(target.position))
       {
+         if (this.metrics != null)
+         {
+            this.metrics.captured();
+         }
          return true;
       }
       else
       {
-         Point nextPos = octo.nextPositionOcto(this, target.position);
+         Point nextPos = octo.nextPosition(this, target);
 
          if (!octo.position.equals(nextPos))
          {
-            Optional<Entity> occupant = getOccupant(nextPos);
-            if (occupant.isPresent())
+            if (isOccupied(nextPos))
             {
-               scheduler.unscheduleAllEvents(occupant.get());
+               scheduler.unscheduleAllEvents(getOccupancyCell(nextPos));
             }
 
             octo.moveEntity(this, nextPos);
@@ -59,7 +105,15 @@ final class WorldModel
    {
       if (octo.position.adjacent(target.position))
       {
+         if (this.metrics != null)
+         {
+            this.metrics.captured();
+         }
          octo.resourceCount += 1;
+         if (octo.table != null)
+         {
+            octo.table.sync(octo);
+         }
          removeEntity(target);
          scheduler.unscheduleAllEvents(target);
 
@@ -67,14 +121,13 @@ final class WorldModel
       }
       else
       {
-         Point nextPos = octo.nextPositionOcto(this, target.position);
+         Point nextPos = octo.nextPosition(this, target);
 
          if (!octo.position.equals(nextPos))
          {
-            Optional<Entity> occupant = getOccupant(nextPos);
-            if (occupant.isPresent())
+            if (isOccupied(nextPos))
             {
-               scheduler.unscheduleAllEvents(occupant.get());
+               scheduler.unscheduleAllEvents(getOccupancyCell(nextPos));
             }
 
             octo.moveEntity(this, nextPos);
@@ -119,59 +172,179 @@ final class WorldModel
     }
 
     public Optional<Point> findOpenAround(Point pos)
+   {
+      int open = findOpenAroundPacked(pos.x, pos.y);
+      if (open == Point.NONE)
+      {
+         return Optional.empty();
+      }
+
+      return Optional.of(pointAt(Point.unpackX(open), Point.unpackY(open)));
+   }
+
+   /* as findOpenAround, packed, or Point.NONE when every cell is taken */
+   public int findOpenAroundPacked(int x, int y)
    {
       for (int dy = -Functions.FISH_REACH; dy <= Functions.FISH_REACH; dy++)
       {
          for (int dx = -Functions.FISH_REACH; dx <= Functions.FISH_REACH; dx++)
          {
-            Point newPt = new Point(pos.x + dx, pos.y + dy);
-            if (withinBounds(newPt) &&
-               !isOccupied(newPt))
+            if (withinBounds(x + dx, y + dy) &&
+               !isOccupied(x + dx, y + dy))
             {
-               return Optional.of(newPt);
+               return Point.pack(x + dx, y + dy);
             }
          }
       }
 
-      return Optional.empty();
+      return Point.NONE;
    }
 
    public boolean withinBounds(Point pos)
     {
-       return pos.y >= 0 && pos.y < this.numRows &&
-          pos.x >= 0 && pos.x < this.numCols;
+       return withinBounds(pos.x, pos.y);
     }
 
+   public boolean withinBounds(int x, int y)
+   {
+      return y >= 0 && y < this.numRows &&
+         x >= 0 && x < this.numCols;
+   }
+
     public boolean isOccupied(Point pos)
    {
-      return this.withinBounds(pos) &&
-         getOccupancyCell(pos) != null;
+      return isOccupied(pos.x, pos.y);
+   }
+
+   public boolean isOccupied(int x, int y)
+   {
+      return this.withinBounds(x, y) &&
+         this.occupancy.get(x, y) != null;
+   }
+
+   /*
+      The one shared Point for a cell, so moving entities around the grid
+      does not allocate.  Points off the grid are not shared.
+   */
+   public Point pointAt(int x, int y)
+   {
+      if (!withinBounds(x, y))
+      {
+         return new Point(x, y);
+      }
+
+      Point pt = this.points.get(x, y);
+      if (pt == null)
+      {
+         pt = new Point(x, y);
+         this.points.set(x, y, pt);
+      }
+      return pt;
    }
 
    public void setOccupancyCell(Point pos,
                                 Entity entity)
    {
-      this.occupancy[pos.y][pos.x] = entity;
+      this.occupancy.set(pos.x, pos.y, entity);
+      this.cellChanged(pos);
+   }
+
+   /* the view repaints the tile at (x, y) on its next frame */
+   public void markDirty(int x, int y)
+   {
+      this.dirtyCells.mark(this.cellIndex(x, y));
+   }
+
+   /*
+      A number for cell (x, y), chunk by chunk so that cells close together
+      on the map are close together in dirtyCells.
+   */
+   public int cellIndex(int x, int y)
+   {
+      int chunk = (y >> ChunkedGrid.SHIFT) * this.background.chunkCols +
+         (x >> ChunkedGrid.SHIFT);
+      return (chunk << (2 * ChunkedGrid.SHIFT)) |
+         ((y & ChunkedGrid.MASK) << ChunkedGrid.SHIFT) | (x & ChunkedGrid.MASK);
+   }
+
+   public int cellX(int cell)
+   {
+      int chunk = cell >> (2 * ChunkedGrid.SHIFT);
+      return ((chunk % this.background.chunkCols) << ChunkedGrid.SHIFT) |
+         (cell & ChunkedGrid.MASK);
+   }
+
+   public int cellY(int cell)
+   {
+      int chunk = cell >> (2 * ChunkedGrid.SHIFT);
+      return ((chunk / this.background.chunkCols) << ChunkedGrid.SHIFT) |
+         ((cell >> ChunkedGrid.SHIFT) & ChunkedGrid.MASK);
+   }
+
+   /*
+      Frees the background chunks that hold a single background, as a
+      loaded map of open sea does.  Call once loading is done.
+   */
+   public void compact()
+   {
+      this.background.compact();
    }
 
    public Entity getOccupancyCell(Point pos)
    {
-      return this.occupancy[pos.y][pos.x];
+      return this.occupancy.get(pos.x, pos.y);
+   }
+
+   public Entity getOccupancyCell(int x, int y)
+   {
+      return this.occupancy.get(x, y);
    }
 
    public Optional<Entity> findNearest(Point pos,
                                        EntityKind kind)
    {
-      List<Entity> ofType = new LinkedList<>();
-      for (Entity entity : this.entities)
+      return this.spatialIndex.get(kind).nearest(pos);
+   }
+
+   /*
+      The entity a seeker should head for.  With flow-field pathing an
+      adjacent target is preferred, since the field has already led the
+      seeker to it; otherwise this is the nearest target.
+   */
+   public Optional<Entity> findTarget(Point pos, EntityKind kind)
+   {
+      if (this.pathing == PathingKind.FLOW_FIELD)
       {
-         if (entity.kind == kind)
+         Entity adjacent = this.distanceField(kind).adjacentTarget(pos);
+         if (adjacent != null)
          {
-            ofType.add(entity);
+            return Optional.of(adjacent);
          }
       }
 
-      return Functions.nearestEntity(ofType, pos);
+      return findNearest(pos, kind);
+   }
+
+   public synchronized DistanceField distanceField(EntityKind kind)
+   {
+      DistanceField field = this.distanceFields.get(kind);
+      if (field == null)
+      {
+         field = new DistanceField(this, kind);
+         this.distanceFields.put(kind, field);
+         this.liveFields = this.distanceFields.values().toArray(
+            new DistanceField[0]);
+      }
+      return field;
+   }
+
+   public synchronized AStarSearch pathfinder()
+   {
+      if (this.pathfinder == null)
+      {
+         this.pathfinder = new AStarSearch(this);
+      }
+      return this.pathfinder;
    }
 
    public Optional<Entity> getOccupant(Point pos)
@@ -195,10 +368,28 @@ final class WorldModel
       if (this.withinBounds(entity.position))
       {
          this.setOccupancyCell(entity.position, entity);
-         this.entities.add(entity);
+         this.attachEntity(entity);
       }
    }
 
+   /*
+      As addEntity, but only if the entity's cell is still empty.  Returns
+      false, leaving the world untouched, if another entity got there first.
+   */
+   public boolean tryAddEntity(Entity entity)
+   {
+      Point pos = entity.position;
+      if (!this.withinBounds(pos) ||
+         !this.occupancy.claim(pos.x, pos.y, entity))
+      {
+         return false;
+      }
+
+      this.cellChanged(pos);
+      this.attachEntity(entity);
+      return true;
+   }
+
    public void removeEntity(Entity entity)
    {
       removeEntityAt(entity.position);
@@ -206,16 +397,107 @@ final class WorldModel
 
    public void removeEntityAt(Point pos)
    {
-      if (this.withinBounds(pos)
-         && this.getOccupancyCell(pos) != null)
+      if (this.withinBounds(pos))
       {
-         Entity entity = this.getOccupancyCell(pos);
+         /* taking the occupant out and emptying the cell is one step, so
+            two threads removing the same cell cannot both detach it */
+         Entity entity = this.occupancy.remove(pos.x, pos.y);
+         if (entity != null)
+         {
+            this.detachEntity(entity, pos);
+            this.cellChanged(pos);
+         }
+      }
+   }
+
+   /*
+      Moves entity to pos, taking whatever stood there off the grid, with
+      both cells changed in one step of the occupancy grid.
+   */
+   public void moveEntity(Entity entity, Point pos)
+   {
+      Point oldPos = entity.position;
+      Entity displaced = this.occupancy.move(entity, oldPos.x, oldPos.y,
+         pos.x, pos.y);
+      if (displaced != null)
+      {
+         this.detachEntity(displaced, pos);
+      }
+
+      this.spatialIndex.get(entity.kind).move(entity, oldPos, pos);
+      entity.position = pos;
+
+      this.cellChanged(oldPos);
+      this.cellChanged(pos);
+   }
+
+   private void attachEntity(Entity entity)
+   {
+      this.entities.add(entity);
+      this.spatialIndex.get(entity.kind).add(entity, entity.position);
 
-         /* this moves the entity just outside of the grid for
-            debugging purposes */
-         entity.position = new Point(-1, -1);
-         this.entities.remove(entity);
-         this.setOccupancyCell(pos, null);
+      if (this.table != null)
+      {
+         this.table.add(entity);
+      }
+      if (this.metrics != null)
+      {
+         this.metrics.entityAdded(entity.kind);
+      }
+   }
+
+   /* everything but the occupancy cell, which the caller has emptied */
+   private void detachEntity(Entity entity, Point pos)
+   {
+      this.spatialIndex.get(entity.kind).remove(entity, pos);
+
+      if (this.table != null)
+      {
+         this.table.remove(entity);
+      }
+      if (this.metrics != null)
+      {
+         this.metrics.entityRemoved(entity.kind);
+      }
+
+      /* this moves the entity just outside of the grid for
+         debugging purposes */
+      entity.position = OFF_GRID;
+      this.entities.remove(entity);
+   }
+
+   public long cellChanges()
+   {
+      return this.cellChanges.sum();
+   }
+
+   private void cellChanged(Point pos)
+   {
+      this.markDirty(pos.x, pos.y);
+      if (this.pathing == PathingKind.A_STAR)
+      {
+         this.cellChanges.increment();
+      }
+
+      for (DistanceField field : this.liveFields)
+      {
+         field.cellChanged(pos);
+      }
+   }
+
+   /*
+      Starts mirroring the entities into a struct-of-arrays EntityTable, which
+      from then on is kept up to date alongside the entity set.
+   */
+   public void enableEntityTable()
+   {
+      if (this.table == null)
+      {
+         this.table = new EntityTable();
+         for (Entity entity : this.entities)
+         {
+            this.table.add(entity);
+         }
       }
    }
 
@@ -237,11 +519,22 @@ final class WorldModel
       if (this.withinBounds(pos))
       {
          background.setBackgroundCell(this, pos);
+         this.markDirty(pos.x, pos.y);
+
+         if (this.backgroundCache != null)
+         {
+            this.backgroundCache.invalidate(pos.x, pos.y);
+         }
       }
    }
 
    public Background getBackgroundCell(Point pos)
     {
-       return this.background[pos.y][pos.x];
+       return this.background.get(pos.x, pos.y);
     }
+
+   public Background getBackgroundCell(int x, int y)
+   {
+      return this.background.get(x, y);
+   }
 }
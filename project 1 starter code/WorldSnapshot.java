@@ -0,0 +1,343 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/*
+WorldSnapshot: a compact binary form of a world, read through a memory-mapped
+FileChannel. All numbers are big-endian:
+
+   int magic, int version, int numRows, int numCols
+   int paletteSize, then per entry: short length, UTF-8 background id
+   numRows * numCols shorts: palette index of each cell, row by row
+   int entityCount, then per entity:
+      byte kind (EntityKind ordinal), int x, int y, int resourceLimit,
+      int resourceCount, int actionPeriod, int animationPeriod,
+      int imageIndex, short length, UTF-8 id
+
+Converting a text save:
+
+   java WorldSnapshot world.sav world.wbin
+
+A single mapping limits a snapshot to 2 GB
+ */
+
+final class WorldSnapshot
+{
+   public static final String EXTENSION = ".wbin";
+   public static final int MAGIC = 0x57424e31;  // "WBN1"
+   public static final int VERSION = 1;
+
+   /* magic, version, numRows, numCols and paletteSize */
+   private static final int HEADER_BYTES = 20;
+
+   /* kind, seven ints and an empty id's length */
+   public static final int MIN_ENTITY_BYTES = 1 + 7 * 4 + 2;
+
+   public static void main(String[] args) throws IOException
+   {
+      if (args.length != 2)
+      {
+         System.err.println("usage: java WorldSnapshot <world.sav> <out"
+            + EXTENSION + ">");
+         return;
+      }
+
+      ImageStore imageStore = new ImageStore(
+         new PImage(VirtualWorld.TILE_WIDTH, VirtualWorld.TILE_HEIGHT,
+            PApplet.RGB));
+      WorldModel world = new WorldModel(VirtualWorld.worldRows,
+         VirtualWorld.worldCols,
+         VirtualWorld.createDefaultBackground(imageStore));
+      try
+      {
+         imageStore.load(new Scanner(new File(args[0])), world);
+      }
+      catch (FileNotFoundException e)
+      {
+         System.err.println(e.getMessage());
+         return;
+      }
+
+      write(world, Paths.get(args[1]));
+      System.out.println(String.format("wrote %d entities to %s",
+         world.entities.size(), args[1]));
+   }
+
+   /* dumps the backgrounds and entities of world as they are right now */
+   public static void write(WorldModel world, Path file) throws IOException
+   {
+      Map<String, Integer> palette = new HashMap<>();
+      List<String> paletteIds = new ArrayList<>();
+      short[] cells = new short[world.numRows * world.numCols];
+      for (int y = 0; y < world.numRows; y++)
+      {
+         for (int x = 0; x < world.numCols; x++)
+         {
+            String id = world.getBackgroundCell(x, y).id;
+            Integer index = palette.get(id);
+            if (index == null)
+            {
+               if (paletteIds.size() > Short.MAX_VALUE)
+               {
+                  throw new IOException("too many background kinds");
+               }
+               index = paletteIds.size();
+               palette.put(id, index);
+               paletteIds.add(id);
+            }
+            cells[y * world.numCols + x] = (short)(int)index;
+         }
+      }
+
+      List<Entity> entities = new ArrayList<>(world.entities);
+
+      try (OutputStream fileOut = Files.newOutputStream(file);
+         DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(fileOut, 1 << 16)))
+      {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeInt(world.numRows);
+         out.writeInt(world.numCols);
+
+         out.writeInt(paletteIds.size());
+         for (String id : paletteIds)
+         {
+            writeString(out, id);
+         }
+         for (short cell : cells)
+         {
+            out.writeShort(cell);
+         }
+
+         out.writeInt(entities.size());
+         for (Entity entity : entities)
+         {
+            out.writeByte(entity.kind.ordinal());
+            out.writeInt(entity.position.x);
+            out.writeInt(entity.position.y);
+            out.writeInt(entity.resourceLimit);
+            out.writeInt(entity.resourceCount);
+            out.writeInt(entity.actionPeriod);
+            out.writeInt(entity.animationPeriod);
+            out.writeInt(entity.imageIndex);
+            writeString(out, entity.id);
+         }
+      }
+   }
+
+   /*
+      Loads a snapshot into world.  Cells and entities outside world are
+      skipped, as are entities whose cell is already taken; the number of
+      entities not placed is returned.  A truncated or corrupt file is an
+      IOException naming it, though whatever was read before the damage
+      stays in world.
+   */
+   public static int read(Path file, WorldModel world, ImageStore imageStore)
+      throws IOException
+   {
+      LoadPhaseEvent phase = LoadPhaseEvent.start("read snapshot");
+      ByteBuffer in;
+      try (FileChannel channel = FileChannel.open(file,
+         StandardOpenOption.READ))
+      {
+         in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+
+      if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC)
+      {
+         throw new IOException(String.format("%s is not a world snapshot",
+            file));
+      }
+      int version = in.getInt();
+      if (version != VERSION)
+      {
+         throw new IOException(String.format(
+            "unsupported snapshot version %d", version));
+      }
+
+      /* the checks below catch bad counts before anything is allocated for
+         them; a string running off the end is caught here */
+      try
+      {
+         int numRows = in.getInt();
+         int numCols = in.getInt();
+         readBackgrounds(in, file, numRows, numCols, world, imageStore);
+
+         int skipped = 0;
+         int entityCount = readCount(in, file, MIN_ENTITY_BYTES, "entities");
+         for (int i = 0; i < entityCount; i++)
+         {
+            if (!world.tryAddEntity(readEntity(in, file, world, imageStore)))
+            {
+               skipped++;
+            }
+         }
+
+         phase.finish(entityCount);
+         return skipped;
+      }
+      catch (BufferUnderflowException e)
+      {
+         throw truncated(file, e);
+      }
+   }
+
+   /*
+      Reads the palette and the numRows by numCols cells that follow it,
+      setting the background of each cell inside world.  Shared with
+      Checkpoint, whose files hold the same sections.
+   */
+   public static void readBackgrounds(ByteBuffer in, Path file, int numRows,
+      int numCols, WorldModel world, ImageStore imageStore) throws IOException
+   {
+      if (numRows < 0 || numCols < 0)
+      {
+         throw corrupt(file, "header");
+      }
+      int paletteSize = in.getInt();
+      if (paletteSize < 0 || paletteSize > Short.MAX_VALUE + 1 ||
+         paletteSize * 2L > in.remaining())
+      {
+         throw corrupt(file, "header");
+      }
+
+      Background[] palette = new Background[paletteSize];
+      for (int i = 0; i < palette.length; i++)
+      {
+         String id = readString(in);
+         palette[i] = new Background(id, imageStore.getImageList(id));
+      }
+
+      if ((long)numRows * numCols * 2 > in.remaining())
+      {
+         throw corrupt(file, "cells");
+      }
+      for (int y = 0; y < numRows; y++)
+      {
+         for (int x = 0; x < numCols; x++)
+         {
+            int index = in.getShort();
+            if (index < 0 || index >= palette.length)
+            {
+               throw corrupt(file, "cells");
+            }
+            if (world.withinBounds(x, y))
+            {
+               world.setBackground(world.pointAt(x, y), palette[index]);
+            }
+         }
+      }
+   }
+
+   /* a count of records of at least recordBytes each, checked to fit */
+   public static int readCount(ByteBuffer in, Path file, int recordBytes,
+      String section) throws IOException
+   {
+      int count = in.getInt();
+      if (count < 0 || (long)count * recordBytes > in.remaining())
+      {
+         throw corrupt(file, section);
+      }
+      return count;
+   }
+
+   /* one entity record, not yet added to world */
+   public static Entity readEntity(ByteBuffer in, Path file, WorldModel world,
+      ImageStore imageStore) throws IOException
+   {
+      EntityKind[] kinds = EntityKind.values();
+      int ordinal = in.get();
+      if (ordinal < 0 || ordinal >= kinds.length)
+      {
+         throw corrupt(file, "entities");
+      }
+      EntityKind kind = kinds[ordinal];
+      int x = in.getInt();
+      int y = in.getInt();
+      int resourceLimit = in.getInt();
+      int resourceCount = in.getInt();
+      int actionPeriod = in.getInt();
+      int animationPeriod = in.getInt();
+      int imageIndex = in.getInt();
+      String id = readString(in);
+
+      Entity entity = new Entity(kind, id, world.pointAt(x, y),
+         imageStore.getImageList(imageKey(kind)), resourceLimit,
+         resourceCount, actionPeriod, animationPeriod);
+      entity.imageIndex = Math.floorMod(imageIndex, entity.images.size());
+      return entity;
+   }
+
+   public static IOException corrupt(Path file, String section)
+   {
+      return new IOException(String.format("%s has a corrupt %s section",
+         file, section));
+   }
+
+   public static IOException truncated(Path file,
+      BufferUnderflowException cause)
+   {
+      return new IOException(String.format("%s is truncated", file), cause);
+   }
+
+   public static String imageKey(EntityKind kind)
+   {
+      switch (kind)
+      {
+         case OCTO_FULL:
+         case OCTO_NOT_FULL:
+            return Functions.OCTO_KEY;
+         case FISH:
+            return Functions.FISH_KEY;
+         case CRAB:
+            return Functions.CRAB_KEY;
+         case QUAKE:
+            return Functions.QUAKE_KEY;
+         case SGRASS:
+            return Functions.SGRASS_KEY;
+         case ATLANTIS:
+            return Functions.ATLANTIS_KEY;
+         case OBSTACLE:
+            return Functions.OBSTACLE_KEY;
+         default:
+            throw new IllegalArgumentException(
+               String.format("no images for %s", kind));
+      }
+   }
+
+   public static void writeString(DataOutputStream out, String value)
+      throws IOException
+   {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeShort(bytes.length);
+      out.write(bytes);
+   }
+
+   public static String readString(ByteBuffer in)
+   {
+      int length = in.getShort() & 0xffff;
+      byte[] bytes = new byte[length];
+      in.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+}
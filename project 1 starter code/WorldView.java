@@ -1,7 +1,5 @@
 import processing.core.PApplet;
-import processing.core.PImage;
-
-import java.util.Optional;
+import processing.core.PGraphics;
 
 /*
 WorldView ideally mostly controls drawing the current part of the whole world
@@ -16,6 +14,16 @@ final class WorldView
    public int tileHeight;
    public Viewport viewport;
 
+   /* the viewport as last drawn; only tiles the world marks dirty are
+      repainted into it, unless incremental is turned off */
+   public PGraphics buffer;
+   public BackgroundCache backgroundCache;
+   public boolean incremental;
+   private boolean repaintAll;
+
+   /* dirty cells drawn by the current drawViewport */
+   private int dirtyTiles;
+
    public WorldView(int numRows, int numCols, PApplet screen, WorldModel world,
       int tileWidth, int tileHeight)
    {
@@ -24,6 +32,11 @@ final class WorldView
       this.tileWidth = tileWidth;
       this.tileHeight = tileHeight;
       this.viewport = new Viewport(numRows, numCols);
+      this.backgroundCache = new BackgroundCache(world, screen, tileWidth,
+         tileHeight);
+      world.backgroundCache = this.backgroundCache;
+      this.incremental = true;
+      this.repaintAll = true;
    }
 
    public void shiftView(int colDelta, int rowDelta)
@@ -33,45 +46,177 @@ final class WorldView
       int newRow = Functions.clamp(this.viewport.row + rowDelta, 0,
          this.world.numRows - this.viewport.numRows);
 
-      this.viewport.shift(newCol, newRow);
+      if (newCol != this.viewport.col || newRow != this.viewport.row)
+      {
+         this.viewport.shift(newCol, newRow);
+         this.repaintAll = true;
+      }
    }
 
    public void drawBackground()
    {
-      for (int row = 0; row < this.viewport.numRows; row++)
+      this.backgroundCache.draw(this.screen.g, this.viewport.col,
+         this.viewport.row, this.viewport.numCols, this.viewport.numRows, 0, 0);
+   }
+
+   public void drawEntities()
+   {
+      if (this.world.table != null)
+      {
+         this.drawEntityTable(this.world.table);
+         return;
+      }
+
+      for (Entity entity : this.world.entities)
       {
-         for (int col = 0; col < this.viewport.numCols; col++)
+         Point pos = entity.position;
+
+         if (this.viewport.contains(pos.x, pos.y))
          {
-            Point worldPoint = this.viewport.viewportToWorld(col, row);
-            Optional<PImage> image = this.world.getBackgroundImage(
-                    worldPoint);
-            if (image.isPresent())
-            {
-               this.screen.image(image.get(), col * this.tileWidth,
-                  row * this.tileHeight);
-            }
+            int viewPoint = this.viewport.worldToViewportPacked(pos.x, pos.y);
+            SpriteAtlas.draw(this.screen.g, entity.images, entity.imageIndex,
+               Point.unpackX(viewPoint) * this.tileWidth,
+               Point.unpackY(viewPoint) * this.tileHeight);
          }
       }
    }
 
-   public void drawEntities()
+   private void drawEntityTable(EntityTable table)
    {
-      for (Entity entity : this.world.entities)
+      for (int row = 0; row < table.size; row++)
       {
-         Point pos = entity.position;
+         int x = table.xs[row];
+         int y = table.ys[row];
 
-         if (this.viewport.contains(pos))
+         if (this.viewport.contains(x, y))
          {
-            Point viewPoint = this.viewport.worldToViewport(pos.x, pos.y);
-            this.screen.image(Functions.getCurrentImage(entity),
-               viewPoint.x * this.tileWidth, viewPoint.y * this.tileHeight);
+            SpriteAtlas.draw(this.screen.g, table.images[row],
+               table.imageIndices[row], (x - this.viewport.col) * this.tileWidth,
+               (y - this.viewport.row) * this.tileHeight);
          }
       }
    }
 
    public void drawViewport()
     {
-       this.drawBackground();
-       this.drawEntities();
+       if (!DrawViewportEvent.TYPE.isEnabled())
+       {
+          this.dirtyTiles = 0;
+          this.drawView();
+          return;
+       }
+
+       DrawViewportEvent event = new DrawViewportEvent();
+       event.begin();
+       boolean repaint = !this.incremental || this.buffer == null ||
+          this.repaintAll;
+       this.dirtyTiles = 0;
+
+       this.drawView();
+
+       event.end();
+       if (event.shouldCommit())
+       {
+          event.col = this.viewport.col;
+          event.row = this.viewport.row;
+          event.repaint = repaint;
+          event.tiles = repaint ?
+             this.viewport.numCols * this.viewport.numRows : this.dirtyTiles;
+          event.commit();
+       }
     }
+
+    /* drawViewport without the flight recorder event */
+    private void drawView()
+    {
+       if (!this.incremental)
+       {
+          this.drawBackground();
+          this.drawEntities();
+          return;
+       }
+
+       if (this.buffer == null)
+       {
+          this.buffer = this.screen.createGraphics(
+             this.viewport.numCols * this.tileWidth,
+             this.viewport.numRows * this.tileHeight);
+          this.repaintAll = true;
+       }
+
+       this.buffer.beginDraw();
+       if (this.repaintAll)
+       {
+          this.repaintAll = false;
+          this.world.dirtyCells.clear();
+          this.backgroundCache.draw(this.buffer, this.viewport.col,
+             this.viewport.row, this.viewport.numCols, this.viewport.numRows,
+             0, 0);
+          for (int row = 0; row < this.viewport.numRows; row++)
+          {
+             for (int col = 0; col < this.viewport.numCols; col++)
+             {
+                this.drawOccupant(col + this.viewport.col,
+                   row + this.viewport.row);
+             }
+          }
+       }
+       else
+       {
+          this.world.dirtyCells.drain(this::drawDirtyCell);
+       }
+       this.buffer.endDraw();
+
+       this.screen.image(this.buffer, 0, 0);
+    }
+
+   private void drawDirtyCell(int cell)
+   {
+      int x = this.world.cellX(cell);
+      int y = this.world.cellY(cell);
+      if (this.viewport.contains(x, y))
+      {
+         this.drawTile(x, y);
+         this.dirtyTiles++;
+      }
+   }
+
+   /* background then occupant of one world cell, into the buffer */
+   private void drawTile(int x, int y)
+   {
+      if (this.world.withinBounds(x, y))
+      {
+         this.backgroundCache.draw(this.buffer, x, y, 1, 1,
+            (x - this.viewport.col) * this.tileWidth,
+            (y - this.viewport.row) * this.tileHeight);
+         this.drawOccupant(x, y);
+      }
+   }
+
+   /* reads the sprite from the occupant's EntityTable row when it has one,
+      as drawEntities does */
+   private void drawOccupant(int x, int y)
+   {
+      Entity occupant = this.world.withinBounds(x, y) ?
+         this.world.getOccupancyCell(x, y) : null;
+      if (occupant == null)
+      {
+         return;
+      }
+
+      int screenX = (x - this.viewport.col) * this.tileWidth;
+      int screenY = (y - this.viewport.row) * this.tileHeight;
+      EntityTable table = occupant.table;
+      if (table != null)
+      {
+         int row = occupant.tableIndex;
+         SpriteAtlas.draw(this.buffer, table.images[row],
+            table.imageIndices[row], screenX, screenY);
+      }
+      else
+      {
+         SpriteAtlas.draw(this.buffer, occupant.images, occupant.imageIndex,
+            screenX, screenY);
+      }
+   }
 }
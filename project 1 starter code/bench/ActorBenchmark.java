@@ -0,0 +1,91 @@
+/*
+ActorBenchmark: runs the same synthetic worlds through the event queue and
+through an ActorSystem and reports the events executed per wall second
+
+   java ActorBenchmark [world seconds] [rows cols density]
+
+The default sizes go past 100k entities. Without virtual threads every actor
+holds a platform thread, so actor runs above PLATFORM_THREAD_LIMIT entities
+are skipped
+ */
+
+final class ActorBenchmark
+{
+   private static final int[][] SIZES = { { 100, 100 }, { 400, 400 },
+      { 750, 750 } };
+   private static final double DENSITY = 0.20;
+   private static final long SEED = 203;
+   private static final long DEFAULT_SECONDS = 30;
+   private static final int PLATFORM_THREAD_LIMIT = 4000;
+
+   public static void main(String[] args)
+   {
+      long seconds = args.length > 0 ? Long.parseLong(args[0]) :
+         DEFAULT_SECONDS;
+      int[][] sizes = SIZES;
+      double density = DENSITY;
+      if (args.length > 3)
+      {
+         sizes = new int[][] { { Integer.parseInt(args[1]),
+            Integer.parseInt(args[2]) } };
+         density = Double.parseDouble(args[3]);
+      }
+
+      System.out.println(String.format("%-8s %-18s %9s %12s %10s %12s",
+         "mode", "world", "entities", "events", "wall ms", "events/sec"));
+
+      for (int[] size : sizes)
+      {
+         run(false, size[0], size[1], density, seconds);
+         run(true, size[0], size[1], density, seconds);
+      }
+   }
+
+   private static void run(boolean actors, int numRows, int numCols,
+      double density, long seconds)
+   {
+      Functions.rand.setSeed(SEED);
+      SyntheticWorld synthetic = new SyntheticWorld(numRows, numCols, density,
+         SEED);
+      String world = String.format("%dx%d d=%.2f", numCols, numRows,
+         density);
+      int entities = synthetic.world.entities.size();
+
+      VirtualClock clock = new VirtualClock(0);
+      EventScheduler scheduler = new EventScheduler(1.0,
+         new HeapEventQueue(new EventComparator()), clock);
+
+      if (actors)
+      {
+         scheduler.actors = new ActorSystem(scheduler, 0);
+         scheduler.clock = scheduler.actors;
+         if (!scheduler.actors.virtualThreads &&
+            entities > PLATFORM_THREAD_LIMIT)
+         {
+            System.out.println(String.format("%-8s %-18s %9d %s", "actors",
+               world, entities, "skipped: no virtual threads"));
+            scheduler.actors.shutdown();
+            return;
+         }
+      }
+
+      VirtualWorld.scheduleActions(synthetic.world, scheduler,
+         synthetic.imageStore);
+
+      long start = System.currentTimeMillis();
+      long events = actors ? scheduler.updateOnTime(seconds * 1000) :
+         HeadlessWorld.run(scheduler, clock, seconds * 1000);
+      long wall = System.currentTimeMillis() - start;
+
+      String mode = actors ?
+         (scheduler.actors.virtualThreads ? "actors/v" : "actors/p") : "queue";
+      System.out.println(String.format("%-8s %-18s %9d %12d %10d %12.0f",
+         mode, world, entities, events, wall,
+         events * 1000.0 / Math.max(wall, 1)));
+
+      if (actors)
+      {
+         scheduler.actors.shutdown();
+      }
+   }
+}
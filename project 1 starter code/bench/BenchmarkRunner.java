@@ -0,0 +1,95 @@
+import java.lang.management.ManagementFactory;
+import java.util.function.IntSupplier;
+
+/*
+BenchmarkRunner: a small JMH-style harness. Each operation is calibrated into
+batches of about BATCH_MILLIS, run through warmup iterations and then measured
+over several iterations, reporting the mean and spread in ns/op along with the
+bytes allocated per op by the benchmark thread (the same figure as JMH's
+gc.alloc.rate.norm). Results are folded into a sink so the JIT cannot discard
+the work
+ */
+
+final class BenchmarkRunner
+{
+   public static final int WARMUP_ITERATIONS = 5;
+   public static final int MEASURE_ITERATIONS = 5;
+   public static final long BATCH_MILLIS = 100;
+
+   public static volatile int sink;
+
+   private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+   public static void printHeader()
+   {
+      System.out.println(String.format("%-28s %-22s %14s %12s %10s",
+         "benchmark", "params", "ns/op", "+/-", "B/op"));
+   }
+
+   public static void measure(String name, String params, IntSupplier op)
+   {
+      int batch = calibrate(op);
+
+      for (int i = 0; i < WARMUP_ITERATIONS; i++)
+      {
+         runBatch(op, batch);
+      }
+
+      long threadId = Thread.currentThread().getId();
+      long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+
+      double[] samples = new double[MEASURE_ITERATIONS];
+      for (int i = 0; i < MEASURE_ITERATIONS; i++)
+      {
+         samples[i] = (double)runBatch(op, batch) / batch;
+      }
+
+      double bytesPerOp = (double)(THREADS.getThreadAllocatedBytes(threadId) -
+         allocatedBefore) / ((long)batch * MEASURE_ITERATIONS);
+
+      double mean = 0;
+      for (double sample : samples)
+      {
+         mean += sample;
+      }
+      mean /= samples.length;
+
+      double variance = 0;
+      for (double sample : samples)
+      {
+         variance += (sample - mean) * (sample - mean);
+      }
+      double error = Math.sqrt(variance / samples.length);
+
+      System.out.println(String.format("%-28s %-22s %14.1f %12.1f %10.1f",
+         name, params, mean, error, bytesPerOp));
+   }
+
+   private static int calibrate(IntSupplier op)
+   {
+      int batch = 1;
+      while (true)
+      {
+         long nanos = runBatch(op, batch);
+         if (nanos >= BATCH_MILLIS * 1_000_000L || batch >= 1 << 28)
+         {
+            return batch;
+         }
+         batch = (int)Math.min((long)batch * 2, 1 << 28);
+      }
+   }
+
+   private static long runBatch(IntSupplier op, int batch)
+   {
+      int acc = 0;
+      long start = System.nanoTime();
+      for (int i = 0; i < batch; i++)
+      {
+         acc += op.getAsInt();
+      }
+      long nanos = System.nanoTime() - start;
+      sink += acc;
+      return nanos;
+   }
+}
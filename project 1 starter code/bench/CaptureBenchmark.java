@@ -0,0 +1,92 @@
+/*
+CaptureBenchmark: runs synthetic worlds headless under each pathing strategy
+and counts how many octo and crab activity events it takes per successful
+capture (a fish eaten, an atlantis reached or seaGrass destroyed)
+
+   java CaptureBenchmark [world seconds]
+ */
+
+final class CaptureBenchmark
+{
+   private static final int[][] SIZES = { { 30, 40 }, { 100, 100 } };
+   private static final double[] DENSITIES = { 0.05, 0.20 };
+   private static final long SEED = 203;
+   private static final long DEFAULT_SECONDS = 300;
+
+   public static void main(String[] args)
+   {
+      long seconds = args.length > 0 ? Long.parseLong(args[0]) :
+         DEFAULT_SECONDS;
+
+      System.out.println(String.format("%-11s %-16s %12s %10s %14s %10s",
+         "pathing", "world", "mover evts", "captures", "evts/capture",
+         "wall ms"));
+
+      for (int[] size : SIZES)
+      {
+         for (double density : DENSITIES)
+         {
+            for (PathingKind pathing : PathingKind.values())
+            {
+               run(pathing, size[0], size[1], density, seconds);
+            }
+         }
+      }
+   }
+
+   private static void run(PathingKind pathing, int numRows, int numCols,
+      double density, long seconds)
+   {
+      Functions.rand.setSeed(SEED);
+      SyntheticWorld synthetic = new SyntheticWorld(numRows, numCols, density,
+         SEED);
+      WorldModel world = synthetic.world;
+      world.pathing = pathing;
+
+      VirtualClock clock = new VirtualClock(0);
+      EventScheduler scheduler = new EventScheduler(1.0,
+         new HeapEventQueue(new EventComparator()), clock);
+      SimulationMetrics metrics = SimulationMetrics.attach(world, scheduler);
+      VirtualWorld.scheduleActions(world, scheduler, synthetic.imageStore);
+
+      long end = seconds * 1000;
+      long moverEvents = 0;
+      long start = System.currentTimeMillis();
+
+      /* runEvent recycles the event, so whether it was a mover's activity
+         is read before it runs */
+      Event next;
+      while ((next = scheduler.eventQueue.peek()) != null && next.time < end)
+      {
+         clock.advanceTo(next.time);
+         while ((next = scheduler.pollBefore(clock.currentTime() + 1)) != null)
+         {
+            boolean mover = next.action.kind == ActionKind.ACTIVITY &&
+               isMover(next.entity);
+            if (scheduler.runEvent(next) && mover)
+            {
+               moverEvents++;
+            }
+         }
+      }
+
+      long wall = System.currentTimeMillis() - start;
+      System.out.println(String.format("%-11s %-16s %12d %10d %14.1f %10d",
+         pathing, String.format("%dx%d d=%.2f", numCols, numRows, density),
+         moverEvents, metrics.getCaptures(),
+         (double)moverEvents / Math.max(metrics.getCaptures(), 1), wall));
+   }
+
+   private static boolean isMover(Entity entity)
+   {
+      switch (entity.kind)
+      {
+         case OCTO_FULL:
+         case OCTO_NOT_FULL:
+         case CRAB:
+            return true;
+         default:
+            return false;
+      }
+   }
+}
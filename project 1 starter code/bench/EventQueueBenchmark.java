@@ -0,0 +1,118 @@
+import java.util.Random;
+
+/*
+EventQueueBenchmark: compares the heap and timing wheel event queues on a
+steady-state load shaped like the simulation: every event is rescheduled one
+period after it fires, and a slice of events is cancelled and re-added each
+100ms tick the way unscheduleAllEvents/scheduleEvent are used by movers
+
+   java EventQueueBenchmark [pending counts...]
+ */
+
+final class EventQueueBenchmark
+{
+   private static final int[] DEFAULT_SIZES = { 10_000, 100_000, 1_000_000 };
+
+   /* periods in ms drawn from the animation/action periods in world.sav
+      and Functions */
+   private static final int[] PERIODS = { 100, 100, 100, 813, 992, 1100,
+      20_000, 25_000, 30_000 };
+
+   private static final int TICK = VirtualWorld.TIMER_ACTION_PERIOD;
+   private static final int TICKS = 100;
+   private static final int CANCELS_PER_TICK = 1_000;
+   private static final int ROUNDS = 2;
+
+   public static void main(String[] args)
+   {
+      int[] sizes = DEFAULT_SIZES;
+      if (args.length > 0)
+      {
+         sizes = new int[args.length];
+         for (int i = 0; i < args.length; i++)
+         {
+            sizes[i] = Integer.parseInt(args[i]);
+         }
+      }
+
+      System.out.println(String.format("%-8s %10s %14s %14s %14s",
+         "queue", "pending", "schedule ns", "fire ns", "cancel ns"));
+
+      for (int size : sizes)
+      {
+         for (int round = 0; round < ROUNDS; round++)
+         {
+            boolean report = round == ROUNDS - 1;
+            run("heap", new HeapEventQueue(new EventComparator()), size,
+               report);
+            run("wheel", new TimingWheelEventQueue(
+               TimingWheelEventQueue.DEFAULT_SLOT_COUNT, 0), size, report);
+         }
+      }
+   }
+
+   private static void run(String name, EventQueue queue, int size,
+      boolean report)
+   {
+      Random rand = new Random(size);
+      Event[] events = new Event[size];
+
+      for (int i = 0; i < size; i++)
+      {
+         int period = PERIODS[rand.nextInt(PERIODS.length)];
+         Entity entity = Functions.createFish("e" + i, new Point(0, 0),
+            period, null);
+         events[i] = new Event(null, 0, entity);
+      }
+
+      long start = System.nanoTime();
+      for (Event event : events)
+      {
+         event.time = rand.nextInt(event.entity.actionPeriod) + 1;
+         queue.add(event);
+      }
+      long scheduleNanos = System.nanoTime() - start;
+
+      long fired = 0;
+      long cancelled = 0;
+      long fireNanos = 0;
+      long cancelNanos = 0;
+      long now = 0;
+
+      for (int tick = 0; tick < TICKS; tick++)
+      {
+         now += TICK;
+
+         start = System.nanoTime();
+         Event next;
+         while ((next = queue.pollBefore(now)) != null)
+         {
+            next.time = now + next.entity.actionPeriod;
+            queue.add(next);
+            fired++;
+         }
+         fireNanos += System.nanoTime() - start;
+
+         start = System.nanoTime();
+         for (int i = 0; i < CANCELS_PER_TICK; i++)
+         {
+            Event event = events[rand.nextInt(size)];
+            if (queue.remove(event))
+            {
+               event.time = now + event.entity.actionPeriod;
+               queue.add(event);
+               cancelled++;
+            }
+         }
+         cancelNanos += System.nanoTime() - start;
+      }
+
+      if (report)
+      {
+         System.out.println(String.format("%-8s %10d %14.1f %14.1f %14.1f",
+            name, size, (double)scheduleNanos / size,
+            (double)fireNanos / Math.max(fired, 1),
+            (double)cancelNanos / Math.max(cancelled, 1)));
+      }
+   }
+}
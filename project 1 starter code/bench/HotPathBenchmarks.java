@@ -0,0 +1,312 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+/*
+HotPathBenchmarks: measures the simulation hot paths on synthetic worlds of
+increasing size and density
+
+   java HotPathBenchmarks [suite...]
+
+where suite is any of tick, schedule, nearest, open, move, scan, load,
+parse, snapshot; with no arguments every suite runs
+ */
+
+final class HotPathBenchmarks
+{
+   private static final int[][] SIZES = { { 30, 40 }, { 200, 200 },
+      { 500, 500 } };
+   private static final double[] DENSITIES = { 0.05, 0.20 };
+   private static final long SEED = 203;
+   private static final int PROBES = 4096;
+
+   private static final EntityKind[] TARGET_KINDS = { EntityKind.FISH,
+      EntityKind.ATLANTIS, EntityKind.SGRASS };
+
+   public static void main(String[] args)
+   {
+      BenchmarkRunner.printHeader();
+
+      for (int[] size : SIZES)
+      {
+         for (double density : DENSITIES)
+         {
+            SyntheticWorld synthetic = new SyntheticWorld(size[0], size[1],
+               density, SEED);
+            String params = String.format("%dx%d d=%.2f n=%d", size[1],
+               size[0], density, synthetic.all.size());
+
+            if (selected(args, "tick"))
+            {
+               benchmarkUpdateOnTime(params, size, density);
+            }
+            if (selected(args, "schedule"))
+            {
+               benchmarkScheduling(params, synthetic);
+            }
+            if (selected(args, "nearest"))
+            {
+               benchmarkFindNearest(params, synthetic);
+            }
+            if (selected(args, "open"))
+            {
+               benchmarkFindOpenAround(params, synthetic);
+            }
+            if (selected(args, "move"))
+            {
+               benchmarkNextPosition(params, synthetic);
+            }
+            if (selected(args, "scan"))
+            {
+               benchmarkScan(params, synthetic);
+            }
+            if (selected(args, "load"))
+            {
+               benchmarkLoad(params, synthetic);
+            }
+            if (selected(args, "parse"))
+            {
+               benchmarkParse(params, synthetic);
+            }
+            if (selected(args, "snapshot"))
+            {
+               benchmarkSnapshot(params, synthetic);
+            }
+         }
+      }
+   }
+
+   private static boolean selected(String[] args, String suite)
+   {
+      if (args.length == 0)
+      {
+         return true;
+      }
+      for (String arg : args)
+      {
+         if (arg.equals(suite))
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /* one TIMER_ACTION_PERIOD of world time per op, on a live world */
+   private static void benchmarkUpdateOnTime(String params, int[] size,
+      double density)
+   {
+      SyntheticWorld synthetic = new SyntheticWorld(size[0], size[1], density,
+         SEED);
+      VirtualClock clock = new VirtualClock(0);
+      EventScheduler scheduler = new EventScheduler(1.0,
+         new HeapEventQueue(new EventComparator()), clock);
+      VirtualWorld.scheduleActions(synthetic.world, scheduler,
+         synthetic.imageStore);
+
+      BenchmarkRunner.measure("EventScheduler.updateOnTime", params, () -> {
+         clock.advanceTo(clock.currentTime() +
+            VirtualWorld.TIMER_ACTION_PERIOD);
+         return scheduler.updateOnTime(clock.currentTime());
+      });
+   }
+
+   /* two scheduleEvent calls and one unscheduleAllEvents per op, against a
+      queue already holding every entity's events */
+   private static void benchmarkScheduling(String params,
+      SyntheticWorld synthetic)
+   {
+      VirtualClock clock = new VirtualClock(0);
+      EventScheduler scheduler = new EventScheduler(1.0,
+         new HeapEventQueue(new EventComparator()), clock);
+      VirtualWorld.scheduleActions(synthetic.world, scheduler,
+         synthetic.imageStore);
+      List<Entity> entities = synthetic.all;
+      int[] next = { 0 };
+
+      BenchmarkRunner.measure("schedule/unscheduleAll", params, () -> {
+         Entity entity = entities.get(next[0]++ % entities.size());
+         scheduler.unscheduleAllEvents(entity);
+         scheduler.scheduleEvent(entity,
+            entity.createActivityAction(synthetic.world,
+               synthetic.imageStore), 1000);
+         scheduler.scheduleEvent(entity,
+            entity.createAnimationAction(synthetic.world, 0), 100);
+         return scheduler.eventQueue.size();
+      });
+   }
+
+   private static void benchmarkFindNearest(String params,
+      SyntheticWorld synthetic)
+   {
+      Point[] probes = probes(synthetic, new Random(SEED));
+      int[] next = { 0 };
+
+      BenchmarkRunner.measure("WorldModel.findNearest", params, () -> {
+         int i = next[0]++;
+         return synthetic.world.findNearest(probes[i % PROBES],
+            TARGET_KINDS[i % TARGET_KINDS.length]).isPresent() ? 1 : 0;
+      });
+   }
+
+   private static void benchmarkFindOpenAround(String params,
+      SyntheticWorld synthetic)
+   {
+      Point[] probes = probes(synthetic, new Random(SEED));
+      int[] next = { 0 };
+
+      BenchmarkRunner.measure("WorldModel.findOpenAround", params, () ->
+         synthetic.world.findOpenAround(probes[next[0]++ % PROBES])
+            .isPresent() ? 1 : 0);
+   }
+
+   private static void benchmarkNextPosition(String params,
+      SyntheticWorld synthetic)
+   {
+      Point[] probes = probes(synthetic, new Random(SEED));
+      int[] next = { 0 };
+
+      if (!synthetic.octos.isEmpty())
+      {
+         BenchmarkRunner.measure("Entity.nextPositionOcto", params, () -> {
+            int i = next[0]++;
+            Entity octo = synthetic.octos.get(i % synthetic.octos.size());
+            return octo.nextPositionOcto(synthetic.world,
+               probes[i % PROBES]).x;
+         });
+      }
+
+      if (!synthetic.crabs.isEmpty())
+      {
+         BenchmarkRunner.measure("Entity.nextPositionCrab", params, () -> {
+            int i = next[0]++;
+            Entity crab = synthetic.crabs.get(i % synthetic.crabs.size());
+            return crab.nextPositionCrab(synthetic.world,
+               probes[i % PROBES]).x;
+         });
+      }
+   }
+
+   /* the drawEntities walk: every entity tested against a viewport, first
+      through the entity set and then through the EntityTable columns */
+   private static void benchmarkScan(String params, SyntheticWorld synthetic)
+   {
+      WorldModel world = synthetic.world;
+      Viewport viewport = new Viewport(VirtualWorld.VIEW_ROWS,
+         VirtualWorld.VIEW_COLS);
+      viewport.shift(synthetic.numCols / 2, synthetic.numRows / 2);
+
+      BenchmarkRunner.measure("scan entity set", params, () -> {
+         int visible = 0;
+         for (Entity entity : world.entities)
+         {
+            if (viewport.contains(entity.position.x, entity.position.y))
+            {
+               visible += entity.imageIndex + 1;
+            }
+         }
+         return visible;
+      });
+
+      world.enableEntityTable();
+      EntityTable table = world.table;
+
+      BenchmarkRunner.measure("scan EntityTable", params, () -> {
+         int visible = 0;
+         for (int row = 0; row < table.size; row++)
+         {
+            if (viewport.contains(table.xs[row], table.ys[row]))
+            {
+               visible += table.imageIndices[row] + 1;
+            }
+         }
+         return visible;
+      });
+   }
+
+   /* parses the whole save text into a fresh world per op */
+   private static void benchmarkLoad(String params, SyntheticWorld synthetic)
+   {
+      BenchmarkRunner.measure("ImageStore.load", params, () -> {
+         ImageStore imageStore = SyntheticWorld.createImageStore();
+         WorldModel world = new WorldModel(synthetic.numRows,
+            synthetic.numCols,
+            VirtualWorld.createDefaultBackground(imageStore));
+         imageStore.load(new Scanner(synthetic.saveText), world);
+         return world.entities.size();
+      });
+   }
+
+   /* the same save text as the load suite, through WorldFileParser */
+   private static void benchmarkParse(String params, SyntheticWorld synthetic)
+   {
+      byte[] saveBytes = synthetic.saveText.getBytes(StandardCharsets.UTF_8);
+      BenchmarkRunner.measure("WorldFileParser.parse", params, () -> {
+         ImageStore imageStore = SyntheticWorld.createImageStore();
+         WorldModel world = new WorldModel(synthetic.numRows,
+            synthetic.numCols,
+            VirtualWorld.createDefaultBackground(imageStore));
+         try
+         {
+            new WorldFileParser(world, imageStore).parse(Channels.newChannel(
+               new ByteArrayInputStream(saveBytes)));
+         }
+         catch (IOException e)
+         {
+            throw new UncheckedIOException(e);
+         }
+         return world.entities.size();
+      });
+   }
+
+   /* the same world as the load suite, read back from a WorldSnapshot */
+   private static void benchmarkSnapshot(String params,
+      SyntheticWorld synthetic)
+   {
+      try
+      {
+         Path file = Files.createTempFile("synthetic",
+            WorldSnapshot.EXTENSION);
+         file.toFile().deleteOnExit();
+         WorldSnapshot.write(synthetic.world, file);
+
+         BenchmarkRunner.measure("WorldSnapshot.read", params, () -> {
+            ImageStore imageStore = SyntheticWorld.createImageStore();
+            WorldModel world = new WorldModel(synthetic.numRows,
+               synthetic.numCols,
+               VirtualWorld.createDefaultBackground(imageStore));
+            try
+            {
+               WorldSnapshot.read(file, world, imageStore);
+            }
+            catch (IOException e)
+            {
+               throw new UncheckedIOException(e);
+            }
+            return world.entities.size();
+         });
+      }
+      catch (IOException e)
+      {
+         throw new UncheckedIOException(e);
+      }
+   }
+
+   private static Point[] probes(SyntheticWorld synthetic, Random rand)
+   {
+      Point[] probes = new Point[PROBES];
+      for (int i = 0; i < PROBES; i++)
+      {
+         probes[i] = new Point(rand.nextInt(synthetic.numCols),
+            rand.nextInt(synthetic.numRows));
+      }
+      return probes;
+   }
+}
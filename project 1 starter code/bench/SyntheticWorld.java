@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/*
+SyntheticWorld: seeded worlds of a given size and entity density for the
+benchmarks, made by WorldGenerator in the world.sav grammar and loaded through
+ImageStore.load just like the real save file
+ */
+
+final class SyntheticWorld
+{
+   public final int numRows;
+   public final int numCols;
+   public final String saveText;
+   public final ImageStore imageStore;
+   public final WorldModel world;
+   public final List<Entity> octos;
+   public final List<Entity> crabs;
+   public final List<Entity> all;
+
+   public SyntheticWorld(int numRows, int numCols, double density, long seed)
+   {
+      this.numRows = numRows;
+      this.numCols = numCols;
+      this.saveText = generate(numRows, numCols, density, new Random(seed));
+      this.imageStore = createImageStore();
+      this.world = load(this.saveText, numRows, numCols, this.imageStore);
+
+      this.octos = new ArrayList<>();
+      this.crabs = new ArrayList<>();
+      this.all = new ArrayList<>(this.world.entities);
+      for (Entity entity : this.all)
+      {
+         if (entity.kind == EntityKind.OCTO_NOT_FULL)
+         {
+            this.octos.add(entity);
+         }
+      }
+
+      /* crabs only appear once fish mature, so seed some directly */
+      Random rand = new Random(seed + 1);
+      int crabCount = Math.max(1, this.octos.size());
+      for (int i = 0; i < crabCount * 4 && this.crabs.size() < crabCount; i++)
+      {
+         Point pt = new Point(rand.nextInt(numCols), rand.nextInt(numRows));
+         if (!this.world.isOccupied(pt))
+         {
+            Entity crab = Functions.createCrab("crab_" + i, pt, 200, 100,
+               this.imageStore.getImageList(Functions.CRAB_KEY));
+            this.world.addEntity(crab);
+            this.crabs.add(crab);
+            this.all.add(crab);
+         }
+      }
+   }
+
+   public static ImageStore createImageStore()
+   {
+      return new ImageStore(new PImage(VirtualWorld.TILE_WIDTH,
+         VirtualWorld.TILE_HEIGHT, PApplet.RGB));
+   }
+
+   public static WorldModel load(String saveText, int numRows, int numCols,
+      ImageStore imageStore)
+   {
+      WorldModel world = new WorldModel(numRows, numCols,
+         VirtualWorld.createDefaultBackground(imageStore));
+      imageStore.load(new Scanner(saveText), world);
+      return world;
+   }
+
+   /* a WorldGenerator world with its default mix, as text */
+   public static String generate(int numRows, int numCols, double density,
+      Random rand)
+   {
+      StringBuilder out = new StringBuilder();
+      try
+      {
+         new WorldGenerator(numRows, numCols, density,
+            WorldGenerator.DEFAULT_MIX).write(out, rand);
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException(e);
+      }
+      return out.toString();
+   }
+}